@@ -19,6 +19,7 @@ import static com.google.common.collect.Maps.newHashMap;
 
 import java.lang.reflect.Constructor;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -29,12 +30,14 @@ public class BeanDefinition {
 	private final Class<?> beanType;
 	private Constructor ctor;
 	private Map<String, PropertyDefinition> properties = newHashMap();
+	private boolean frozen;
 
 	public BeanDefinition(Class<?> type) {
 		this.beanType = type;
 	}
 
 	public void setCtor(Constructor ctor) {
+		checkNotFrozen();
 		this.ctor = ctor;
 	}
 
@@ -62,7 +65,7 @@ public class BeanDefinition {
 	}
 
 	public Collection<PropertyDefinition> getProperties() {
-		return properties.values();
+		return Collections.unmodifiableCollection(properties.values());
 	}
 
 	public PropertyDefinition getProperty(String name) {
@@ -70,19 +73,41 @@ public class BeanDefinition {
 	}
 
 	public Collection<String> getPropertyNames() {
-		return properties.keySet();
+		return Collections.unmodifiableSet(properties.keySet());
 	}
 
 	public void setPropertyMap(Map<String, PropertyDefinition> properties) {
+		checkNotFrozen();
 		this.properties = properties;
 	}
 
 	public void addProperty(PropertyDefinition p) {
+		checkNotFrozen();
 		this.properties.put(p.getName(), p);
 	}
 
+	/**
+	 * Make this definition and its properties read only, as it's about to be shared via the {@link BeanDefinitionCache}
+	 */
+	void freeze() {
+		frozen = true;
+		for (PropertyDefinition p : properties.values()) {
+			p.freeze();
+		}
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new BeanException("The definition of %s is shared and read only", beanType.getName());
+		}
+	}
+
 	@Override
 	public String toString() {
 		return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
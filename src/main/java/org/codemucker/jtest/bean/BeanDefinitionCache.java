@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM wide cache of extracted bean definitions, shared by all extractors. Definitions are keyed by the bean class itself
+ * (not its name, so same named classes from different class loaders don't clash) and the fingerprint of the options used
+ * to extract them.
+ *
+ * <p>
+ * Entries hang off the class via a {@link ClassValue} so they don't prevent class unloading.
+ * </p>
+ *
+ * <p>
+ * Definitions returned from here are shared between threads and callers and must be treated as read only
+ * </p>
+ */
+public final class BeanDefinitionCache {
+
+	private static final ClassValue<ConcurrentMap<Object, BeanDefinition>> DEFS_BY_TYPE = new ClassValue<ConcurrentMap<Object, BeanDefinition>>() {
+		@Override
+		protected ConcurrentMap<Object, BeanDefinition> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Object, BeanDefinition>(4, 0.75f, 1);
+		}
+	};
+
+	private BeanDefinitionCache() {
+		// static only
+	}
+
+	/**
+	 * Return the cached definition for the given type extracted with options having the given fingerprint
+	 *
+	 * @return null if not yet cached
+	 */
+	public static BeanDefinition get(Class<?> beanClass, Object optionsFingerprint) {
+		return DEFS_BY_TYPE.get(beanClass).get(optionsFingerprint);
+	}
+
+	/**
+	 * Cache the given definition unless another thread beat us to it
+	 *
+	 * @return the definition which should be used, which may not be the one passed in
+	 */
+	public static BeanDefinition putIfAbsent(Class<?> beanClass, Object optionsFingerprint, BeanDefinition def) {
+		BeanDefinition existing = DEFS_BY_TYPE.get(beanClass).putIfAbsent(optionsFingerprint, def);
+		return existing != null ? existing : def;
+	}
+
+	/**
+	 * Drop all cached definitions for the given type
+	 */
+	public static void clear(Class<?> beanClass) {
+		DEFS_BY_TYPE.remove(beanClass);
+	}
+}
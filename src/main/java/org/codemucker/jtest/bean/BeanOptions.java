@@ -15,7 +15,9 @@
  */
 package org.codemucker.jtest.bean;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -33,10 +35,69 @@ public class BeanOptions {
 	private Collection<String> ignoreProperties = new HashSet<String>();
 	private Map<String, Collection<String>> ignorePropertiesOnClass = new HashMap<String, Collection<String>>();
 
+	// if the class overrides isIncludeProperty, in which case what's extracted can't be told from the fields alone
+	private static final ClassValue<Boolean> OVERRIDES_INCLUDE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("isIncludeProperty", Class.class, String.class, Class.class).getDeclaringClass() != BeanOptions.class;
+			} catch (NoSuchMethodException e) {
+				throw new BeanException("Can't find isIncludeProperty on %s", e, type.getName());
+			}
+		}
+	};
+
+	private int modCount;
+	private Object fingerprint;
+
 	public void setFailSilently() {
 		failOnAdditionalSetters = false;
 		failOnMissingSetters = false;
 		failOnInvalidGetters = false;
+		changed();
+	}
+
+	/**
+	 * Mark these options as modified. Any cached state derived from them (fingerprints, definitions, plans) will be
+	 * rebuilt on next use. Subclasses must call this from every mutator.
+	 */
+	protected void changed() {
+		modCount++;
+		fingerprint = null;
+	}
+
+	/**
+	 * Incremented on every modification, so callers can cheaply detect if cached state derived from these options is stale
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * Return an immutable value which equals the fingerprint of any other options which would extract the exact same
+	 * bean definitions. Used as the key into the shared {@link BeanDefinitionCache}. Includes the options' class, as
+	 * subclasses may extract differently.
+	 *
+	 * @return null if these options can't be fingerprinted, because the class overrides
+	 *         {@link #isIncludeProperty(Class, String, Class)} with rules which can't be seen from here. Definitions
+	 *         extracted with such options are not cached
+	 */
+	public Object getFingerprint() {
+		if (OVERRIDES_INCLUDE.get(getClass())) {
+			return null;
+		}
+		Object key = fingerprint;
+		if (key == null) {
+			Map<String, Collection<String>> ignoreOnClass = new HashMap<String, Collection<String>>();
+			for (Map.Entry<String, Collection<String>> entry : ignorePropertiesOnClass.entrySet()) {
+				ignoreOnClass.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<String>(entry.getValue())));
+			}
+			key = Collections.unmodifiableList(Arrays.<Object> asList(getClass(), failOnInvalidGetters, failOnMissingSetters,
+			        failOnAdditionalSetters, failOnMisMatchingFields, extractFields, makeAccessible,
+			        Collections.unmodifiableSet(new HashSet<String>(ignoreProperties)), Collections.unmodifiableMap(ignoreOnClass)));
+			fingerprint = key;
+		}
+		return key;
 	}
 
 	public boolean isMakeAccessible() {
@@ -45,6 +106,7 @@ public class BeanOptions {
 
 	public BeanOptions makeAccessible(boolean b) {
 	    this.makeAccessible = b;
+	    changed();
 	    return this;
 	}
 
@@ -54,6 +116,7 @@ public class BeanOptions {
 
 	public BeanOptions failOnInvalidGetters(boolean failOnInvalidGetters) {
 		this.failOnInvalidGetters = failOnInvalidGetters;
+		changed();
 		return this;
 	}
 
@@ -63,6 +126,7 @@ public class BeanOptions {
 
 	public BeanOptions failOnMissingSetters(boolean failOnMissingSetters) {
 		this.failOnMissingSetters = failOnMissingSetters;
+		changed();
 		return this;
 	}
 
@@ -72,16 +136,21 @@ public class BeanOptions {
 
 	public BeanOptions failOnAdditionalSetters(boolean failOnAdditionalSetters) {
 		this.failOnAdditionalSetters = failOnAdditionalSetters;
+		changed();
 		return this;
 	}
 
 	public BeanOptions ignoreProperty(String propertyPath) {
 		ignoreProperties.add(propertyPath);
+		changed();
 		return this;
 	}
 
+	/**
+	 * A read only view of the property paths to ignore, use {@link #ignoreProperty(String)} to add to them
+	 */
 	public Collection<String> getIgnoreProperties() {
-		return ignoreProperties;
+		return Collections.unmodifiableCollection(ignoreProperties);
 	}
 
 	public BeanOptions ignoreProperty(Class<?> beanClass, String propertyName) {
@@ -92,11 +161,20 @@ public class BeanOptions {
 			ignorePropertiesOnClass.put(key, propertiesToIgnore);
 		}
 		propertiesToIgnore.add(propertyName);
+		changed();
 		return this;
 	}
 
+	/**
+	 * A read only copy of the properties to ignore by class name, use {@link #ignoreProperty(Class, String)} to add to
+	 * them
+	 */
 	public Map<String, Collection<String>> getIgnorePropertiesOnClass() {
-		return ignorePropertiesOnClass;
+		Map<String, Collection<String>> copy = new HashMap<String, Collection<String>>();
+		for (Map.Entry<String, Collection<String>> entry : ignorePropertiesOnClass.entrySet()) {
+			copy.put(entry.getKey(), Collections.unmodifiableCollection(entry.getValue()));
+		}
+		return Collections.unmodifiableMap(copy);
 	}
 
 	public boolean isIncludeProperty(Class<?> beanClass, String propertyName, Class<?> propertyType) {
@@ -118,6 +196,7 @@ public class BeanOptions {
 
 	public BeanOptions failOnMisMatchingFields(boolean failOnMisMatchingFields) {
 		this.failOnMisMatchingFields = failOnMisMatchingFields;
+		changed();
 		return this;
 	}
 
@@ -127,6 +206,7 @@ public class BeanOptions {
 
 	public BeanOptions extractFields(boolean extractFields) {
 		this.extractFields = extractFields;
+		changed();
 		return this;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
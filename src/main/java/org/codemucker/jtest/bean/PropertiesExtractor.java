@@ -27,8 +27,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.codemucker.jtest.ReflectionUtils;
 import org.codemucker.lang.ClassNameUtil;
@@ -36,8 +34,6 @@ import org.codemucker.lang.ClassNameUtil;
 
 public class PropertiesExtractor {
 
-	private final Map<String, BeanDefinition> beanDefsByType = new HashMap<String, BeanDefinition>();
-	
 	private static final Collection<String> ignoreMethodNames = Arrays.asList("getClass", "toString", "hashcode", "equals");
 
 	private final BeanOptions options;
@@ -55,12 +51,8 @@ public class PropertiesExtractor {
 	}
 
 	public BeanDefinition extractBeanDefWithCtor(Class<?> beanClass){
-		BeanDefinition def = extractBeanDef(beanClass);
-		if (def.getCtor() == null) {
-			Constructor<?> ctor = findCtorFor(beanClass);
-			def.setCtor(ctor);
-		}
-		return def;
+		// the ctor is resolved on extraction, before the definition is shared
+		return extractBeanDef(beanClass);
 	}
 	
 	private Constructor<?> findCtorFor(Class<?> beanClass) {
@@ -74,15 +66,32 @@ public class PropertiesExtractor {
 		return ctor;
 	}
 
+	/**
+	 * Return the definition for the given class, extracting it if it's not already in the shared
+	 * {@link BeanDefinitionCache}. Cached definitions are shared so are frozen, trying to modify them fails. Options
+	 * without a {@link BeanOptions#getFingerprint() fingerprint} bypass the cache and get a new modifiable definition
+	 * each call
+	 */
 	public BeanDefinition extractBeanDef(Class<?> beanClass) {
-		BeanDefinition def = beanDefsByType.get(beanClass.getName());
+		Object fingerprint = options.getFingerprint();
+		if (fingerprint == null) {
+			return newBeanDef(beanClass);
+		}
+		BeanDefinition def = BeanDefinitionCache.get(beanClass, fingerprint);
 		if (def == null) {
-			def = new BeanDefinition(beanClass);
-			beanDefsByType.put(beanClass.getName(), def);
-			extractProperties(def);
+			def = newBeanDef(beanClass);
+			def.freeze();
+			def = BeanDefinitionCache.putIfAbsent(beanClass, fingerprint, def);
 		}
 		return def;
 	}
+
+	private BeanDefinition newBeanDef(Class<?> beanClass) {
+		BeanDefinition def = new BeanDefinition(beanClass);
+		extractProperties(def);
+		def.setCtor(findCtorFor(beanClass));
+		return def;
+	}
 	
 	private void extractProperties(BeanDefinition def) {
 		extractMethodGetters(def.getBeanType(), def);
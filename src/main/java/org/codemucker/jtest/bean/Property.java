@@ -15,10 +15,6 @@
  */
 package org.codemucker.jtest.bean;
 
-import static org.codemucker.jtest.ReflectionUtils.getFieldValue;
-import static org.codemucker.jtest.ReflectionUtils.invokeMethod;
-import static org.codemucker.jtest.ReflectionUtils.setFieldValue;
-
 public class Property {
 
 	private final PropertyDefinition def;
@@ -33,24 +29,10 @@ public class Property {
     }
 
 	public Object getValue(Object bean) {
-		if (def.getRead() != null) {
-			return invokeMethod(bean, def.getRead(), null, def.isMakeAccessible());
-		}
-		if (def.getField() != null) {
-			return getFieldValue(bean, def.getField(), def.isMakeAccessible());
-		}
-		throw new BeanException("No accessor for proeprty '%s'", def.getName());
+		return def.getAccessor().getValue(bean);
 	}
 
 	public void setValue(Object bean, Object val) {
-		if (def.getWrite() != null) {
-			invokeMethod(bean, def.getWrite(), new Object[] {val}, def.isMakeAccessible());
-			return;
-		}
-		if (def.getField() != null) {
-			setFieldValue(bean, def.getField(), val, def.isMakeAccessible());
-			return;
-		}
-		throw new BeanException("No mutator for property '%s'", def.getName());
+		def.getAccessor().setValue(bean, val);
 	}
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean;
+
+import static org.codemucker.jtest.ReflectionUtils.isPublic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Pre-bound reader and writer for a single property. Method and field handles are resolved (and accessibility granted)
+ * once on creation, instead of on every invocation as with {@link Method#invoke(Object, Object...)}
+ *
+ * <p>
+ * Readers prefer the getter method over the field, writers the setter method over the field. Accessibility rules mirror
+ * {@link org.codemucker.jtest.ReflectionUtils}: non public members are only made accessible if the property was extracted
+ * with 'makeAccessible' set.
+ * </p>
+ */
+public final class PropertyAccessor {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final String propertyName;
+	private final String readerName;
+	private final String writerName;
+
+	private final MethodHandle reader;
+	private final MethodHandle writer;
+
+	private final IllegalAccessException readerError;
+	private final IllegalAccessException writerError;
+
+	private PropertyAccessor(PropertyDefinition p) {
+		this.propertyName = p.getName();
+		boolean makeAccessible = p.isMakeAccessible();
+
+		MethodHandle handle = null;
+		IllegalAccessException error = null;
+		String name = null;
+		try {
+			if (p.getRead() != null) {
+				name = p.getRead().toGenericString();
+				handle = unreflectGetter(p.getRead(), makeAccessible);
+			} else if (p.getField() != null) {
+				name = p.getField().toGenericString();
+				handle = unreflectGetter(p.getField(), makeAccessible);
+			}
+		} catch (IllegalAccessException e) {
+			error = e;
+		}
+		this.reader = handle;
+		this.readerError = error;
+		this.readerName = name;
+
+		handle = null;
+		error = null;
+		name = null;
+		try {
+			if (p.getWrite() != null) {
+				name = p.getWrite().toGenericString();
+				handle = unreflectSetter(p.getWrite(), makeAccessible);
+			} else if (p.getField() != null) {
+				name = p.getField().toGenericString();
+				handle = unreflectSetter(p.getField(), makeAccessible);
+			}
+		} catch (IllegalAccessException e) {
+			error = e;
+		}
+		this.writer = handle;
+		this.writerError = error;
+		this.writerName = name;
+	}
+
+	/**
+	 * Create the accessor for the given property. Access errors are not thrown here but on first attempted use, so
+	 * properties which are never read or written don't fail
+	 */
+	public static PropertyAccessor compile(PropertyDefinition p) {
+		return new PropertyAccessor(p);
+	}
+
+	private static MethodHandle unreflectGetter(Method m, boolean makeAccessible) throws IllegalAccessException {
+		return LOOKUP.unreflect(accessible(m, makeAccessible)).asType(GETTER_TYPE);
+	}
+
+	private static MethodHandle unreflectSetter(Method m, boolean makeAccessible) throws IllegalAccessException {
+		return LOOKUP.unreflect(accessible(m, makeAccessible)).asType(SETTER_TYPE);
+	}
+
+	private static MethodHandle unreflectGetter(Field f, boolean makeAccessible) throws IllegalAccessException {
+		return LOOKUP.unreflectGetter(accessible(f, makeAccessible)).asType(GETTER_TYPE);
+	}
+
+	private static MethodHandle unreflectSetter(Field f, boolean makeAccessible) throws IllegalAccessException {
+		return LOOKUP.unreflectSetter(accessible(f, makeAccessible)).asType(SETTER_TYPE);
+	}
+
+	/**
+	 * Return the method to unreflect. If access needs granting it's granted on a copy only this accessor sees, as the
+	 * given method may belong to a cached definition other threads are using at the same time
+	 */
+	private static Method accessible(Method m, boolean makeAccessible) {
+		if (!makeAccessible || (isPublic(m) && isPublic(m.getDeclaringClass()))) {
+			return m;
+		}
+		for (Method copy : m.getDeclaringClass().getDeclaredMethods()) {
+			if (copy.equals(m)) {
+				copy.setAccessible(true);
+				return copy;
+			}
+		}
+		throw new BeanException("Can't find method %s on %s", m.toGenericString(), m.getDeclaringClass().getName());
+	}
+
+	/**
+	 * Return the field to unreflect, granting access on a copy if needed, see {@link #accessible(Method, boolean)}
+	 */
+	private static Field accessible(Field f, boolean makeAccessible) {
+		if (!makeAccessible || isPublic(f)) {
+			return f;
+		}
+		try {
+			Field copy = f.getDeclaringClass().getDeclaredField(f.getName());
+			copy.setAccessible(true);
+			return copy;
+		} catch (NoSuchFieldException e) {
+			throw new BeanException("Can't find field %s on %s", e, f.getName(), f.getDeclaringClass().getName());
+		}
+	}
+
+	public String getPropertyName() {
+		return propertyName;
+	}
+
+	public boolean canRead() {
+		return reader != null;
+	}
+
+	public boolean canWrite() {
+		return writer != null;
+	}
+
+	public Object getValue(Object bean) {
+		if (reader == null) {
+			if (readerError != null) {
+				throw new BeanException("Error reading property '%s' via '%s' on class %s", readerError, propertyName, readerName, bean.getClass().getName());
+			}
+			throw new BeanException("No accessor for property '%s'", propertyName);
+		}
+		try {
+			return (Object) reader.invokeExact(bean);
+		} catch (Throwable t) {
+			throw new BeanException("Error reading property '%s' via '%s' on class %s", t, propertyName, readerName, bean.getClass().getName());
+		}
+	}
+
+	public void setValue(Object bean, Object val) {
+		if (writer == null) {
+			if (writerError != null) {
+				throw new BeanException("Error writing property '%s' via '%s' on class %s using val %s", writerError, propertyName, writerName, bean.getClass().getName(), val);
+			}
+			throw new BeanException("No mutator for property '%s'", propertyName);
+		}
+		try {
+			writer.invokeExact(bean, val);
+		} catch (Throwable t) {
+			throw new BeanException("Error writing property '%s' via '%s' on class %s using val %s", t, propertyName, writerName, bean.getClass().getName(), val);
+		}
+	}
+}
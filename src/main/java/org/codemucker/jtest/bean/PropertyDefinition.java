@@ -35,6 +35,9 @@ public class PropertyDefinition {
 	private Method read;
 	private Method write;
 
+	private PropertyAccessor accessor;
+	private boolean frozen;
+
 	public boolean hasMutator() {
 		return write != null || field != null;
 	}
@@ -44,7 +47,9 @@ public class PropertyDefinition {
     }
 
 	public void setMakeAccessible(boolean makeAccessible) {
+		checkNotFrozen();
     	this.makeAccessible = makeAccessible;
+    	this.accessor = null;
     }
 
 	public Field getField() {
@@ -52,7 +57,9 @@ public class PropertyDefinition {
     }
 
 	public void setField(Field field) {
+		checkNotFrozen();
     	this.field = field;
+    	this.accessor = null;
     }
 
 	public boolean isIgnore() {
@@ -60,6 +67,7 @@ public class PropertyDefinition {
 	}
 
 	public void setIgnore(boolean ignore) {
+		checkNotFrozen();
 		this.ignore = ignore;
 	}
 
@@ -68,7 +76,9 @@ public class PropertyDefinition {
 	}
 
 	public void setRead(Method read) {
+		checkNotFrozen();
 		this.read = read;
+		this.accessor = null;
 	}
 
 	public Method getWrite() {
@@ -76,7 +86,22 @@ public class PropertyDefinition {
 	}
 
 	public void setWrite(Method write) {
+		checkNotFrozen();
 		this.write = write;
+		this.accessor = null;
+	}
+
+	/**
+	 * Return the compiled accessor used to read and write this property. Created on first use and reset if the
+	 * read/write/field members are changed
+	 */
+	public PropertyAccessor getAccessor() {
+		PropertyAccessor a = accessor;
+		if (a == null) {
+			a = PropertyAccessor.compile(this);
+			accessor = a;
+		}
+		return a;
 	}
 
 	public String getName() {
@@ -84,6 +109,7 @@ public class PropertyDefinition {
 	}
 
 	public void setName(String name) {
+		checkNotFrozen();
 		this.name = name;
 	}
 
@@ -92,6 +118,7 @@ public class PropertyDefinition {
 	}
 
 	public void setType(Class<?> type) {
+		checkNotFrozen();
 		this.type = type;
 	}
 
@@ -100,9 +127,28 @@ public class PropertyDefinition {
 	}
 
 	public void setGenericType(Type genericType) {
+		checkNotFrozen();
 		this.genericType = genericType;
 	}
 
+	/**
+	 * Make this definition read only, as it's about to be shared. The accessor is compiled now so it's never reset
+	 */
+	void freeze() {
+		getAccessor();
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new BeanException("The definition of property '%s' is shared and read only", name);
+		}
+	}
+
 	public boolean isString(){
 		return String.class == type;
 	}
@@ -131,4 +177,4 @@ public class PropertyDefinition {
 	public String toString(){
 		return ToStringBuilder.reflectionToString(this,ToStringStyle.MULTI_LINE_STYLE);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codemucker.jtest.TestHelper;
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.BeanOptions;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyAccessor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+
+/**
+ * Streams beans to a file as JSON lines (one JSON object per line) or CSV (one row per bean, with a header row).
+ *
+ * <p>
+ * Properties are read through their compiled {@link PropertyAccessor}s, resolved once per bean class, and values are
+ * encoded straight into a large reusable buffer which is written to a {@link FileChannel}, so there are no per bean
+ * strings. Nested beans, collections, arrays and maps are written as JSON (in CSV as a quoted JSON cell). Properties are
+ * written in name order.
+ * </p>
+ *
+ * <p>
+ * The exception is floating point and big numbers (double, float, BigDecimal and BigInteger), which are written via
+ * their toString() to keep its exact formatting, so cost a short lived string each. NaN and infinite values have no
+ * JSON form, they are written as null in JSON and as an empty cell in CSV.
+ * </p>
+ *
+ * <p>
+ * An exporter can be shared between threads, each {@link ExportWriter} must only be used by one thread at a time.
+ * </p>
+ */
+public class BeanExporter {
+
+	public static enum Format {
+		JSON_LINES("jsonl"), CSV("csv");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_DEPTH = 64;
+
+	private static final byte[] NULL = bytes("null");
+	private static final byte[] TRUE = bytes("true");
+	private static final byte[] FALSE = bytes("false");
+
+	private final Class<?> beanClass;
+	private final Format format;
+	private final PropertiesExtractor extractor;
+	private final ConcurrentMap<Class<?>, BeanPlan> plans = new ConcurrentHashMap<Class<?>, BeanPlan>();
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	public BeanExporter(Class<?> beanClass, Format format) {
+		this(beanClass, format, new BeanOptions());
+	}
+
+	public BeanExporter(Class<?> beanClass, Format format, BeanOptions options) {
+		this.beanClass = beanClass;
+		this.format = format;
+		this.extractor = new PropertiesExtractor(options);
+		// fail early if the bean can't be read
+		getPlan(beanClass);
+	}
+
+	public static BeanExporter jsonLines(Class<?> beanClass) {
+		return new BeanExporter(beanClass, Format.JSON_LINES);
+	}
+
+	public static BeanExporter csv(Class<?> beanClass) {
+		return new BeanExporter(beanClass, Format.CSV);
+	}
+
+	/**
+	 * The size of the output buffer of each writer opened after this call
+	 */
+	public BeanExporter bufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Open a writer to a new temp file, see {@link TestHelper#createTempFileWithName(String)}
+	 */
+	public ExportWriter open() throws IOException {
+		return open(new TestHelper().createTempFileWithName(beanClass.getSimpleName() + "." + format.getExtension()));
+	}
+
+	/**
+	 * Open a writer to the given file, replacing any existing content
+	 */
+	public ExportWriter open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		        StandardOpenOption.TRUNCATE_EXISTING);
+		return new ExportWriter(file, channel);
+	}
+
+	private BeanPlan getPlan(Class<?> type) {
+		BeanPlan plan = plans.get(type);
+		if (plan == null) {
+			plan = new BeanPlan(extractor, type);
+			BeanPlan existing = plans.putIfAbsent(type, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(UTF8);
+	}
+
+	/**
+	 * Writes beans to a single file. Not thread safe
+	 */
+	public class ExportWriter implements Closeable {
+
+		private final File file;
+		private final ChannelOutput out;
+		private final BeanPlan plan;
+		private long count;
+
+		private ExportWriter(File file, FileChannel channel) throws IOException {
+			this.file = file;
+			this.out = new ChannelOutput(channel, bufferSize);
+			this.plan = getPlan(beanClass);
+			if (format == Format.CSV) {
+				writeCsvHeader();
+			}
+		}
+
+		/**
+		 * Append the given bean, which must be of the exporter's bean class
+		 */
+		public void write(Object bean) throws IOException {
+			if (format == Format.CSV) {
+				writeCsvRow(bean);
+			} else {
+				writeJsonBean(plan, bean, 0);
+			}
+			out.writeByte('\n');
+			count++;
+		}
+
+		private void writeCsvHeader() throws IOException {
+			for (int i = 0; i < plan.names.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				out.writeBytes(plan.names[i]);
+			}
+			out.writeByte('\n');
+		}
+
+		private void writeCsvRow(Object bean) throws IOException {
+			for (int i = 0; i < plan.readers.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				Object val = plan.readers[i].getValue(bean);
+				if (val == null || isNonFinite(val)) {
+					continue;
+				}
+				if (isCsvRaw(val)) {
+					writeJsonValue(val, 0);
+				} else {
+					out.writeByte('"');
+					out.setDoubleQuotes(true);
+					if (val instanceof CharSequence) {
+						out.writeChars((CharSequence) val);
+					} else if (val instanceof Character || val instanceof Enum) {
+						out.writeChars(val.toString());
+					} else {
+						writeJsonValue(val, 0);
+					}
+					out.setDoubleQuotes(false);
+					out.writeByte('"');
+				}
+			}
+		}
+
+		private boolean isCsvRaw(Object val) {
+			return val instanceof Number || val instanceof Boolean;
+		}
+
+		private boolean isNonFinite(Object val) {
+			if (val instanceof Double || val instanceof Float) {
+				double d = ((Number) val).doubleValue();
+				return Double.isNaN(d) || Double.isInfinite(d);
+			}
+			return false;
+		}
+
+		private void checkDepth(Object val, int depth) {
+			if (depth > MAX_DEPTH) {
+				throw new BeanException("Bean graph deeper than %d, is it cyclic? At %s", MAX_DEPTH, val.getClass().getName());
+			}
+		}
+
+		private void writeJsonBean(BeanPlan beanPlan, Object bean, int depth) throws IOException {
+			checkDepth(bean, depth);
+			out.writeByte('{');
+			for (int i = 0; i < beanPlan.readers.length; i++) {
+				if (i > 0) {
+					out.writeByte(',');
+				}
+				out.writeBytes(beanPlan.jsonKeys[i]);
+				writeJsonValue(beanPlan.readers[i].getValue(bean), depth + 1);
+			}
+			out.writeByte('}');
+		}
+
+		private void writeJsonValue(Object val, int depth) throws IOException {
+			if (val == null) {
+				out.writeBytes(NULL);
+			} else if (val instanceof String) {
+				out.writeJsonString((String) val);
+			} else if (val instanceof Integer || val instanceof Long || val instanceof Short || val instanceof Byte
+			        || val instanceof AtomicInteger || val instanceof AtomicLong) {
+				out.writeLong(((Number) val).longValue());
+			} else if (val instanceof Boolean) {
+				out.writeBytes(((Boolean) val) ? TRUE : FALSE);
+			} else if (val instanceof Double || val instanceof Float) {
+				double d = ((Number) val).doubleValue();
+				if (Double.isNaN(d) || Double.isInfinite(d)) {
+					// not representable in JSON
+					out.writeBytes(NULL);
+				} else {
+					out.writeChars(val.toString());
+				}
+			} else if (val instanceof BigDecimal || val instanceof BigInteger) {
+				out.writeChars(val.toString());
+			} else if (val instanceof CharSequence) {
+				out.writeJsonString((CharSequence) val);
+			} else if (val instanceof Character) {
+				out.writeJsonString(val.toString());
+			} else if (val instanceof Enum) {
+				out.writeJsonString(((Enum<?>) val).name());
+			} else if (val.getClass().isArray()) {
+				checkDepth(val, depth);
+				writeJsonArray(val, depth);
+			} else if (val instanceof Iterable) {
+				checkDepth(val, depth);
+				out.writeByte('[');
+				boolean first = true;
+				for (Object ele : (Iterable<?>) val) {
+					if (!first) {
+						out.writeByte(',');
+					}
+					first = false;
+					writeJsonValue(ele, depth + 1);
+				}
+				out.writeByte(']');
+			} else if (val instanceof Map) {
+				checkDepth(val, depth);
+				out.writeByte('{');
+				boolean first = true;
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) val).entrySet()) {
+					if (!first) {
+						out.writeByte(',');
+					}
+					first = false;
+					out.writeJsonString(String.valueOf(entry.getKey()));
+					out.writeByte(':');
+					writeJsonValue(entry.getValue(), depth + 1);
+				}
+				out.writeByte('}');
+			} else if (val.getClass().getName().startsWith("java.")) {
+				out.writeJsonString(val.toString());
+			} else {
+				writeJsonBean(getPlan(val.getClass()), val, depth);
+			}
+		}
+
+		private void writeJsonArray(Object arr, int depth) throws IOException {
+			out.writeByte('[');
+			Class<?> componentType = arr.getClass().getComponentType();
+			if (componentType == Integer.TYPE) {
+				int[] a = (int[]) arr;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					out.writeLong(a[i]);
+				}
+			} else if (componentType == Long.TYPE) {
+				long[] a = (long[]) arr;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					out.writeLong(a[i]);
+				}
+			} else if (componentType == Byte.TYPE) {
+				byte[] a = (byte[]) arr;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					out.writeLong(a[i]);
+				}
+			} else if (componentType == Short.TYPE) {
+				short[] a = (short[]) arr;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					out.writeLong(a[i]);
+				}
+			} else if (componentType.isPrimitive()) {
+				// the less common, or not integral, primitives
+				int len = Array.getLength(arr);
+				for (int i = 0; i < len; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					writeJsonValue(Array.get(arr, i), depth + 1);
+				}
+			} else {
+				Object[] a = (Object[]) arr;
+				for (int i = 0; i < a.length; i++) {
+					if (i > 0) {
+						out.writeByte(',');
+					}
+					writeJsonValue(a[i], depth + 1);
+				}
+			}
+			out.writeByte(']');
+		}
+
+		/**
+		 * Write out everything buffered so far
+		 */
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * The number of beans written so far
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * The readable properties of a bean class, with the names pre-encoded
+	 */
+	private static final class BeanPlan {
+		final byte[][] names;
+		final byte[][] jsonKeys;
+		final PropertyAccessor[] readers;
+
+		BeanPlan(PropertiesExtractor extractor, Class<?> type) {
+			List<PropertyDefinition> properties = new ArrayList<PropertyDefinition>();
+			for (PropertyDefinition p : extractor.extractBeanDef(type).getProperties()) {
+				if (!p.isIgnore() && p.getAccessor().canRead()) {
+					properties.add(p);
+				}
+			}
+			Collections.sort(properties, new Comparator<PropertyDefinition>() {
+				@Override
+				public int compare(PropertyDefinition p1, PropertyDefinition p2) {
+					return p1.getName().compareTo(p2.getName());
+				}
+			});
+			names = new byte[properties.size()][];
+			jsonKeys = new byte[properties.size()][];
+			readers = new PropertyAccessor[properties.size()];
+			for (int i = 0; i < readers.length; i++) {
+				PropertyDefinition p = properties.get(i);
+				names[i] = bytes(p.getName());
+				jsonKeys[i] = bytes("\"" + p.getName() + "\":");
+				readers[i] = p.getAccessor();
+			}
+		}
+	}
+}
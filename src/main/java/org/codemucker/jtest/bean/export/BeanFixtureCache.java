@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.codemucker.jtest.JTestException;
+import org.codemucker.jtest.ProjectLayouts;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+
+/**
+ * Keeps generated datasets in {@link ColumnarBeanWriter columnar files} between runs, so later runs (and other surefire
+ * forks) map the cached file instead of generating the beans again.
+ *
+ * <p>
+ * A dataset is the beans at indexes 0 to count-1 of the sequence for a seed, see
+ * {@link BeanRandom#generateAt(Class, long, long)}. Only the properties a {@link ColumnarBeanWriter} can store are kept:
+ * primitives, their boxes, strings and enums. Nested beans, collections, maps and arrays are not, so read back they are
+ * null or whatever the bean's ctor set, and a cached bean only equals the generated one if it has no such properties.
+ * </p>
+ *
+ * <p>
+ * Entries are keyed by a hash of the bean class's bytecode (and that of its super classes and property types), the
+ * seed, the count and the options' {@link RandomOptions#getStableFingerprint() stable fingerprint}. One entry is kept per
+ * class version, seed and count: generating an entry deletes the entries for other versions of the class, and those for
+ * the same seed and count made with other options. So options whose fingerprint differs on every run (custom providers
+ * without a toString) replace their entry each time rather than piling up.
+ * </p>
+ *
+ * <p>
+ * Files are written under a temporary name and moved into place, so concurrent runs never see a partial file. Safe to
+ * share between threads
+ * </p>
+ */
+public class BeanFixtureCache {
+
+	/**
+	 * Bump when the way beans are generated or stored changes, so older cached files are not used
+	 */
+	private static final int CACHE_VERSION = 2;
+
+	private static final String EXTENSION = ".col";
+
+	private final File dir;
+
+	/**
+	 * Cache under the project's tmp dir
+	 */
+	public BeanFixtureCache() {
+		this(new File(ProjectLayouts.getDefaultResolver().getTmpDir(), "bean-fixtures"));
+	}
+
+	public BeanFixtureCache(File dir) {
+		this.dir = dir;
+	}
+
+	public File getDir() {
+		return dir;
+	}
+
+	public <T> ColumnarBeanReader<T> get(Class<T> beanClass, long seed, int count) throws IOException {
+		return get(beanClass, seed, count, new RandomOptions());
+	}
+
+	/**
+	 * Return the cached dataset, generating and caching it first if not already cached
+	 */
+	public <T> ColumnarBeanReader<T> get(Class<T> beanClass, long seed, int count, RandomOptions options) throws IOException {
+		String classHash = classHash(beanClass, options);
+		String key = hash(classHash + "|" + seed + "|" + count + "|" + options.getStableFingerprint() + "|" + CACHE_VERSION + "|"
+		        + ColumnarFormat.VERSION);
+		String datasetPrefix = beanClass.getName() + "-" + classHash.substring(0, 12) + "-" + seed + "-" + count + "-";
+		File file = new File(dir, datasetPrefix + key + EXTENSION);
+		if (!file.exists()) {
+			deleteStale(beanClass, classHash.substring(0, 12), datasetPrefix);
+			generate(file, beanClass, seed, count, options);
+		}
+		return ColumnarBeanReader.open(file, beanClass, options);
+	}
+
+	private <T> void generate(File file, Class<T> beanClass, long seed, int count, RandomOptions options) throws IOException {
+		if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new JTestException("Couldn't create dir " + dir.getAbsolutePath());
+		}
+		File tmp = File.createTempFile(beanClass.getName() + "-", ".tmp", dir);
+		try {
+			BeanRandom random = new BeanRandom(options);
+			ColumnarBeanWriter<T> writer = new ColumnarBeanWriter<T>(tmp, beanClass, options);
+			for (int i = 0; i < count; i++) {
+				writer.write(random.generateAt(beanClass, seed, i));
+			}
+			writer.close();
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Delete the entries for the given class generated from a different version of it, and those for the dataset with the
+	 * given prefix made with other options
+	 */
+	private void deleteStale(Class<?> beanClass, final String currentClassHash, final String datasetPrefix) {
+		final String prefix = beanClass.getName() + "-";
+		File[] stale = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(EXTENSION)
+				        && (!name.startsWith(prefix + currentClassHash + "-") || name.startsWith(datasetPrefix));
+			}
+		});
+		if (stale != null) {
+			for (File f : stale) {
+				// may be mapped by another process, in which case it goes once that's done
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached datasets
+	 */
+	public void clear() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.getName().endsWith(EXTENSION)) {
+					f.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hash the bytecode of the bean class, its super classes and the types of its properties, which between them
+	 * determine what is generated
+	 */
+	private static String classHash(Class<?> beanClass, RandomOptions options) {
+		Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+		for (Class<?> type = beanClass; type != null; type = type.getSuperclass()) {
+			types.add(type);
+		}
+		for (PropertyDefinition p : new PropertiesExtractor(options).extractBeanDef(beanClass).getProperties()) {
+			Class<?> type = p.getType();
+			while (type.isArray()) {
+				type = type.getComponentType();
+			}
+			types.add(type);
+		}
+		MessageDigest digest = newDigest();
+		byte[] buf = new byte[8192];
+		for (Class<?> type : types) {
+			if (type.isPrimitive() || type.getName().startsWith("java.") || type.getClassLoader() == null) {
+				continue;
+			}
+			String resource = type.getName().replace('.', '/') + ".class";
+			InputStream in = type.getClassLoader().getResourceAsStream(resource);
+			if (in == null) {
+				throw new JTestException("Can't find the bytecode of %s to key the cache on", type.getName());
+			}
+			try {
+				try {
+					int read;
+					while ((read = in.read(buf)) != -1) {
+						digest.update(buf, 0, read);
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				throw new JTestException("Error reading the bytecode of " + type.getName(), e);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	private static String hash(String s) {
+		return toHex(newDigest().digest(s.getBytes(ColumnarFormat.UTF8)));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new JTestException("No SHA-1 digest available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
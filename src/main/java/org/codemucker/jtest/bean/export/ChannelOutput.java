@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered UTF-8 text output straight to a file channel. Characters and numbers are encoded directly into one reusable
+ * buffer, so writing a value doesn't create any intermediate strings or byte arrays.
+ *
+ * <p>
+ * Not thread safe
+ * </p>
+ */
+final class ChannelOutput implements Closeable {
+
+	private static final byte[] DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' };
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+	private static final byte[] LONG_MIN = "-9223372036854775808".getBytes();
+
+	private final FileChannel channel;
+	private final ByteBuffer buf;
+	private final byte[] digits = new byte[20];
+
+	// when set, every '"' written is doubled, to embed output in a quoted CSV cell
+	private boolean doubleQuotes;
+
+	ChannelOutput(FileChannel channel, int bufferSize) {
+		this.channel = channel;
+		// larger than any single multi byte write below
+		this.buf = ByteBuffer.allocateDirect(Math.max(bufferSize, 64));
+	}
+
+	void setDoubleQuotes(boolean doubleQuotes) {
+		this.doubleQuotes = doubleQuotes;
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buf.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	void writeByte(int b) throws IOException {
+		ensure(2);
+		buf.put((byte) b);
+		if (b == '"' && doubleQuotes) {
+			buf.put((byte) '"');
+		}
+	}
+
+	/**
+	 * Write pre-encoded bytes, such as property names
+	 */
+	void writeBytes(byte[] bytes) throws IOException {
+		if (doubleQuotes) {
+			for (byte b : bytes) {
+				writeByte(b);
+			}
+			return;
+		}
+		int offset = 0;
+		while (offset < bytes.length) {
+			ensure(1);
+			int len = Math.min(buf.remaining(), bytes.length - offset);
+			buf.put(bytes, offset, len);
+			offset += len;
+		}
+	}
+
+	/**
+	 * Write the chars as UTF-8, unquoted and unescaped
+	 */
+	void writeChars(CharSequence s) throws IOException {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				writeByte(c);
+			} else {
+				i = writeNonAscii(s, i, len);
+			}
+		}
+	}
+
+	/**
+	 * Write the chars as a quoted JSON string, escaping as needed
+	 */
+	void writeJsonString(CharSequence s) throws IOException {
+		writeByte('"');
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (c == '"' || c == '\\') {
+					writeByte('\\');
+					writeByte(c);
+				} else if (c < 0x20) {
+					writeControl(c);
+				} else {
+					writeByte(c);
+				}
+			} else {
+				i = writeNonAscii(s, i, len);
+			}
+		}
+		writeByte('"');
+	}
+
+	private void writeControl(char c) throws IOException {
+		writeByte('\\');
+		switch (c) {
+		case '\n':
+			writeByte('n');
+			break;
+		case '\r':
+			writeByte('r');
+			break;
+		case '\t':
+			writeByte('t');
+			break;
+		default:
+			writeByte('u');
+			writeByte('0');
+			writeByte('0');
+			writeByte(HEX[c >> 4]);
+			writeByte(HEX[c & 0xF]);
+		}
+	}
+
+	/**
+	 * Encode the non ASCII char at the given index, and its low surrogate if it has one
+	 *
+	 * @return the index of the last char consumed
+	 */
+	private int writeNonAscii(CharSequence s, int i, int len) throws IOException {
+		ensure(4);
+		char c = s.charAt(i);
+		if (c < 0x800) {
+			buf.put((byte) (0xC0 | (c >> 6)));
+			buf.put((byte) (0x80 | (c & 0x3F)));
+		} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			buf.put((byte) (0xF0 | (cp >> 18)));
+			buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+			buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+			buf.put((byte) (0x80 | (cp & 0x3F)));
+			return i + 1;
+		} else if (Character.isSurrogate(c)) {
+			// unpaired, not encodable
+			buf.put((byte) '?');
+		} else {
+			buf.put((byte) (0xE0 | (c >> 12)));
+			buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buf.put((byte) (0x80 | (c & 0x3F)));
+		}
+		return i;
+	}
+
+	/**
+	 * Write the number in decimal
+	 */
+	void writeLong(long v) throws IOException {
+		if (v == Long.MIN_VALUE) {
+			writeBytes(LONG_MIN);
+			return;
+		}
+		ensure(21);
+		if (v < 0) {
+			buf.put((byte) '-');
+			v = -v;
+		}
+		int pos = digits.length;
+		do {
+			digits[--pos] = DIGITS[(int) (v % 10)];
+			v /= 10;
+		} while (v != 0);
+		buf.put(digits, pos, digits.length - pos);
+	}
+
+	/**
+	 * Write everything buffered so far to the channel
+	 */
+	void flush() throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.codemucker.jtest.bean.export.ColumnarFormat.NULL_CODE;
+import static org.codemucker.jtest.bean.export.ColumnarFormat.UTF8;
+import static org.codemucker.jtest.bean.export.ColumnarFormat.bitWords;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.codemucker.jtest.JTestException;
+import org.codemucker.jtest.ReflectionUtils;
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.BeanOptions;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyAccessor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+import org.codemucker.jtest.bean.export.ColumnarFormat.ColumnType;
+
+/**
+ * Memory maps a file written by a {@link ColumnarBeanWriter}. Opening only reads the header, beans are rebuilt on demand
+ * via {@link #get(int)}, into an existing bean via {@link #read(int, Object)}, or values read straight from a
+ * {@link Column} without creating beans at all.
+ *
+ * <p>
+ * Columns are matched to the bean's properties by name. Columns without a matching property are still available via
+ * {@link #getColumn(String)}, properties without a column are left as the bean's ctor set them.
+ * </p>
+ *
+ * <p>
+ * Safe to share between threads. The mapping is released when the reader is garbage collected
+ * </p>
+ */
+public class ColumnarBeanReader<T> {
+
+	private final File file;
+	private final Class<T> beanClass;
+	private final Constructor<T> ctor;
+	private final int rows;
+	private final Map<String, Column> columnsByName;
+	private final Column[] boundColumns;
+	private final PropertyAccessor[] writers;
+	private final boolean[] primitive;
+
+	private ColumnarBeanReader(File file, Class<T> beanClass, BeanOptions options, ByteBuffer buf) {
+		this.file = file;
+		this.beanClass = beanClass;
+		if (buf.capacity() < 16 || buf.getInt(0) != ColumnarFormat.MAGIC) {
+			throw new JTestException("'%s' is not a columnar bean file", file.getAbsolutePath());
+		}
+		if (buf.getInt(4) != ColumnarFormat.VERSION) {
+			throw new JTestException("'%s' is columnar bean file version %d, expected %d", file.getAbsolutePath(), buf.getInt(4), ColumnarFormat.VERSION);
+		}
+		this.rows = buf.getInt(8);
+		int columnCount = buf.getInt(12);
+		columnsByName = new LinkedHashMap<String, Column>();
+		buf.position(16);
+		for (int i = 0; i < columnCount; i++) {
+			ColumnType type = ColumnType.values()[buf.get()];
+			boolean nullable = buf.get() != 0;
+			byte[] name = new byte[buf.getShort()];
+			buf.get(name);
+			int offset = (int) buf.getLong();
+			Column column = new Column(new String(name, UTF8), type, nullable, buf, offset, rows);
+			columnsByName.put(column.name, column);
+		}
+
+		List<Column> bound = new ArrayList<Column>();
+		List<PropertyDefinition> properties = new ArrayList<PropertyDefinition>();
+		for (PropertyDefinition p : new PropertiesExtractor(options).extractBeanDef(beanClass).getProperties()) {
+			Column column = columnsByName.get(p.getName());
+			if (column == null || p.isIgnore() || !p.hasMutator()) {
+				continue;
+			}
+			if (column.type != ColumnType.forType(p.getType())) {
+				throw new BeanException("Column '%s' in '%s' holds %s values but property on %s is of type %s", column.name, file.getAbsolutePath(), column.type,
+				        beanClass.getName(), p.getType().getName());
+			}
+			if (column.type == ColumnType.ENUM) {
+				column.enumType = p.getType();
+			}
+			bound.add(column);
+			properties.add(p);
+		}
+		boundColumns = bound.toArray(new Column[bound.size()]);
+		writers = new PropertyAccessor[boundColumns.length];
+		primitive = new boolean[boundColumns.length];
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = properties.get(i).getAccessor();
+			primitive[i] = properties.get(i).getType().isPrimitive();
+		}
+		this.ctor = ReflectionUtils.getNoArgCtor(beanClass, options.isMakeAccessible());
+	}
+
+	public static <T> ColumnarBeanReader<T> open(File file, Class<T> beanClass) throws IOException {
+		return open(file, beanClass, new BeanOptions());
+	}
+
+	public static <T> ColumnarBeanReader<T> open(File file, Class<T> beanClass, BeanOptions options) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new JTestException("'%s' is too large to map", file.getAbsolutePath());
+			}
+			// the mapping outlives the channel
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			return new ColumnarBeanReader<T>(file, beanClass, options, buf);
+		} finally {
+			channel.close();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The number of beans in the file
+	 */
+	public int size() {
+		return rows;
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(new ArrayList<String>(columnsByName.keySet()));
+	}
+
+	/**
+	 * Return the column with the given name
+	 *
+	 * @throws BeanException if there is no such column
+	 */
+	public Column getColumn(String name) {
+		Column column = columnsByName.get(name);
+		if (column == null) {
+			throw new BeanException("No column '%s' in '%s', have %s", name, file.getAbsolutePath(), columnsByName.keySet());
+		}
+		return column;
+	}
+
+	/**
+	 * Create the bean at the given row
+	 */
+	public T get(int row) {
+		if (ctor == null) {
+			throw new BeanException("Bean class %s needs a no arg ctor to be read", beanClass.getName());
+		}
+		return read(row, ReflectionUtils.invokeCtorWith(ctor, new Object[0]));
+	}
+
+	/**
+	 * Set the properties of the given bean to the values at the given row, so a single bean can be reused to view each row
+	 *
+	 * @return the given bean
+	 */
+	public T read(int row, T bean) {
+		checkRow(row, rows);
+		for (int i = 0; i < boundColumns.length; i++) {
+			Object val = boundColumns[i].getValue(row);
+			if (val != null || !primitive[i]) {
+				writers[i].setValue(bean, val);
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * A read only list view of the beans, each created on access
+	 */
+	public List<T> asList() {
+		return new BeanList();
+	}
+
+	private static void checkRow(int row, int rows) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("row " + row + ", size " + rows);
+		}
+	}
+
+	private final class BeanList extends AbstractList<T> implements RandomAccess {
+		@Override
+		public T get(int index) {
+			return ColumnarBeanReader.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return rows;
+		}
+	}
+
+	/**
+	 * Read access to the values of a single property. Values are read straight from the mapped file, the typed getters
+	 * don't allocate
+	 */
+	public static final class Column {
+		private final String name;
+		private final ColumnType type;
+		private final boolean nullable;
+		private final ByteBuffer buf;
+		private final int rows;
+		private final int nullsOffset;
+		private final int valuesOffset;
+
+		// dictionary columns only
+		private final int dictionarySize;
+		private final int entryOffsets;
+		private final int entriesOffset;
+		private final Object[] decoded;
+		private Class<?> enumType;
+
+		Column(String name, ColumnType type, boolean nullable, ByteBuffer buf, int offset, int rows) {
+			this.name = name;
+			this.type = type;
+			this.nullable = nullable;
+			this.buf = buf;
+			this.rows = rows;
+			this.nullsOffset = offset;
+			int pos = nullable ? offset + bitWords(rows) * 8 : offset;
+			if (type.isDictionary()) {
+				dictionarySize = buf.getInt(pos);
+				entryOffsets = pos + 4;
+				valuesOffset = entryOffsets + 4 * (dictionarySize + 1);
+				entriesOffset = valuesOffset + 4 * rows;
+				decoded = new Object[dictionarySize];
+			} else {
+				dictionarySize = 0;
+				entryOffsets = 0;
+				entriesOffset = 0;
+				valuesOffset = pos;
+				decoded = null;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isNull(int row) {
+			checkRow(row, rows);
+			if (type.isDictionary()) {
+				return buf.getInt(valuesOffset + 4 * row) == NULL_CODE;
+			}
+			return nullable && (buf.getLong(nullsOffset + 8 * (row >>> 6)) & (1L << row)) != 0;
+		}
+
+		public boolean getBoolean(int row) {
+			checkType(ColumnType.BOOLEAN);
+			checkRow(row, rows);
+			return (buf.getLong(valuesOffset + 8 * (row >>> 6)) & (1L << row)) != 0;
+		}
+
+		/**
+		 * Return the value of an integral or char column, zero if null
+		 */
+		public long getLong(int row) {
+			checkRow(row, rows);
+			switch (type) {
+			case BYTE:
+				return buf.get(valuesOffset + row);
+			case SHORT:
+				return buf.getShort(valuesOffset + 2 * row);
+			case CHAR:
+				return buf.getChar(valuesOffset + 2 * row);
+			case INT:
+				return buf.getInt(valuesOffset + 4 * row);
+			case LONG:
+				return buf.getLong(valuesOffset + 8 * row);
+			default:
+				throw new BeanException("Column '%s' holds %s values, not integers", name, type);
+			}
+		}
+
+		/**
+		 * Return the value of a numeric column, zero if null
+		 */
+		public double getDouble(int row) {
+			if (type == ColumnType.FLOAT) {
+				checkRow(row, rows);
+				return buf.getFloat(valuesOffset + 4 * row);
+			} else if (type == ColumnType.DOUBLE) {
+				checkRow(row, rows);
+				return buf.getDouble(valuesOffset + 8 * row);
+			}
+			return getLong(row);
+		}
+
+		/**
+		 * Return the value of a string column, or the name of the constant of an enum column
+		 */
+		public String getString(int row) {
+			if (!type.isDictionary()) {
+				throw new BeanException("Column '%s' holds %s values, not strings", name, type);
+			}
+			checkRow(row, rows);
+			int code = buf.getInt(valuesOffset + 4 * row);
+			return code == NULL_CODE ? null : decodeString(code);
+		}
+
+		/**
+		 * Return the boxed value at the given row, enum constants if the column is bound to an enum property
+		 */
+		public Object getValue(int row) {
+			if (isNull(row)) {
+				return null;
+			}
+			switch (type) {
+			case BOOLEAN:
+				return getBoolean(row);
+			case BYTE:
+				return (byte) getLong(row);
+			case SHORT:
+				return (short) getLong(row);
+			case CHAR:
+				return (char) getLong(row);
+			case INT:
+				return (int) getLong(row);
+			case LONG:
+				return getLong(row);
+			case FLOAT:
+				return (float) getDouble(row);
+			case DOUBLE:
+				return getDouble(row);
+			default:
+				int code = buf.getInt(valuesOffset + 4 * row);
+				return type == ColumnType.ENUM && enumType != null ? decodeEnum(code) : decodeString(code);
+			}
+		}
+
+		private String decodeString(int code) {
+			Object s = decoded[code];
+			if (!(s instanceof String)) {
+				int start = buf.getInt(entryOffsets + 4 * code);
+				int end = buf.getInt(entryOffsets + 4 * (code + 1));
+				byte[] bytes = new byte[end - start];
+				ByteBuffer dup = buf.duplicate();
+				dup.position(entriesOffset + start);
+				dup.get(bytes);
+				s = new String(bytes, UTF8);
+				if (type == ColumnType.STRING) {
+					// strings are immutable so publishing racily is fine
+					decoded[code] = s;
+				}
+			}
+			return (String) s;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object decodeEnum(int code) {
+			Object val = decoded[code];
+			if (val == null) {
+				String constant = decodeString(code);
+				try {
+					val = Enum.valueOf((Class) enumType, constant);
+				} catch (IllegalArgumentException e) {
+					throw new BeanException("No constant '%s' in enum %s for column '%s'", e, constant, enumType.getName(), name);
+				}
+				decoded[code] = val;
+			}
+			return val;
+		}
+
+		private void checkType(ColumnType expect) {
+			if (type != expect) {
+				throw new BeanException("Column '%s' holds %s values, not %s", name, type, expect);
+			}
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.codemucker.jtest.bean.export.ColumnarFormat.NULL_CODE;
+import static org.codemucker.jtest.bean.export.ColumnarFormat.UTF8;
+import static org.codemucker.jtest.bean.export.ColumnarFormat.align;
+import static org.codemucker.jtest.bean.export.ColumnarFormat.bitWords;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codemucker.jtest.JTestException;
+import org.codemucker.jtest.bean.BeanOptions;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyAccessor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+import org.codemucker.jtest.bean.export.ColumnarFormat.ColumnType;
+
+/**
+ * Writes beans to a binary file laid out column by column, to be memory mapped by a {@link ColumnarBeanReader}. Primitive
+ * (and boxed) properties are packed at their natural width, booleans as bits, strings and enums dictionary encoded.
+ * Properties of any other type are not stored.
+ *
+ * <p>
+ * Rows are collected in memory and the file is written in one go on {@link #close()}. A file is limited to 2GB, the most
+ * which can be mapped at once.
+ * </p>
+ *
+ * <p>
+ * Not thread safe
+ * </p>
+ */
+public class ColumnarBeanWriter<T> implements Closeable {
+
+	private static final int INITIAL_ROWS = 1024;
+
+	private final File file;
+	private final Column[] columns;
+	private int rows;
+	private boolean closed;
+
+	public ColumnarBeanWriter(File file, Class<T> beanClass) {
+		this(file, beanClass, new BeanOptions());
+	}
+
+	public ColumnarBeanWriter(File file, Class<T> beanClass, BeanOptions options) {
+		this.file = file;
+		List<PropertyDefinition> properties = new ArrayList<PropertyDefinition>();
+		for (PropertyDefinition p : new PropertiesExtractor(options).extractBeanDef(beanClass).getProperties()) {
+			if (!p.isIgnore() && p.getAccessor().canRead() && ColumnType.forType(p.getType()) != null) {
+				properties.add(p);
+			}
+		}
+		Collections.sort(properties, new Comparator<PropertyDefinition>() {
+			@Override
+			public int compare(PropertyDefinition p1, PropertyDefinition p2) {
+				return p1.getName().compareTo(p2.getName());
+			}
+		});
+		columns = new Column[properties.size()];
+		for (int i = 0; i < columns.length; i++) {
+			PropertyDefinition p = properties.get(i);
+			ColumnType type = ColumnType.forType(p.getType());
+			if (type.isDictionary()) {
+				columns[i] = new DictionaryColumn(p, type);
+			} else {
+				columns[i] = new PrimitiveColumn(p, type);
+			}
+		}
+	}
+
+	/**
+	 * Append the given bean
+	 */
+	public void write(T bean) {
+		if (closed) {
+			throw new JTestException("Writer for '%s' is already closed", file.getAbsolutePath());
+		}
+		if (rows == Integer.MAX_VALUE) {
+			throw new JTestException("Too many rows for '%s'", file.getAbsolutePath());
+		}
+		for (Column column : columns) {
+			column.add(rows, column.reader.getValue(bean));
+		}
+		rows++;
+	}
+
+	public void writeAll(Iterable<? extends T> beans) {
+		for (T bean : beans) {
+			write(bean);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The number of beans written so far
+	 */
+	public int getCount() {
+		return rows;
+	}
+
+	/**
+	 * Write the file. Calling more than once has no effect
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		byte[][] names = new byte[columns.length][];
+		long pos = 16;
+		for (int i = 0; i < columns.length; i++) {
+			names[i] = columns[i].name.getBytes(UTF8);
+			pos += 1 + 1 + 2 + names[i].length + 8;
+		}
+		long[] offsets = new long[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			pos = align(pos);
+			offsets[i] = pos;
+			pos += columns[i].dataSize(rows);
+		}
+		if (pos > Integer.MAX_VALUE) {
+			throw new JTestException("Columnar file '%s' would be %d bytes, more than the 2GB which can be mapped", file.getAbsolutePath(), pos);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+		        StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, pos);
+			buf.putInt(ColumnarFormat.MAGIC);
+			buf.putInt(ColumnarFormat.VERSION);
+			buf.putInt(rows);
+			buf.putInt(columns.length);
+			for (int i = 0; i < columns.length; i++) {
+				buf.put((byte) columns[i].type.ordinal());
+				buf.put((byte) (columns[i].nullable ? 1 : 0));
+				buf.putShort((short) names[i].length);
+				buf.put(names[i]);
+				buf.putLong(offsets[i]);
+			}
+			for (int i = 0; i < columns.length; i++) {
+				buf.position((int) offsets[i]);
+				columns[i].write(buf, rows);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	private abstract static class Column {
+		final String name;
+		final ColumnType type;
+		final PropertyAccessor reader;
+		final boolean nullable;
+
+		Column(PropertyDefinition p, ColumnType type, boolean nullable) {
+			this.name = p.getName();
+			this.type = type;
+			this.reader = p.getAccessor();
+			this.nullable = nullable;
+		}
+
+		abstract void add(int row, Object val);
+
+		abstract long dataSize(int rows);
+
+		abstract void write(MappedByteBuffer buf, int rows);
+	}
+
+	/**
+	 * Holds every value as a long until written, so one class covers all the primitives
+	 */
+	private static final class PrimitiveColumn extends Column {
+		private long[] values = new long[INITIAL_ROWS];
+		private long[] nulls;
+
+		PrimitiveColumn(PropertyDefinition p, ColumnType type) {
+			super(p, type, !p.getType().isPrimitive());
+			if (nullable) {
+				nulls = new long[bitWords(INITIAL_ROWS)];
+			}
+		}
+
+		@Override
+		void add(int row, Object val) {
+			if (row == values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+				if (nullable) {
+					nulls = Arrays.copyOf(nulls, bitWords(values.length));
+				}
+			}
+			if (val == null) {
+				nulls[row >>> 6] |= 1L << row;
+				values[row] = 0;
+				return;
+			}
+			switch (type) {
+			case BOOLEAN:
+				values[row] = ((Boolean) val) ? 1 : 0;
+				break;
+			case CHAR:
+				values[row] = ((Character) val).charValue();
+				break;
+			case FLOAT:
+				values[row] = Float.floatToRawIntBits((Float) val);
+				break;
+			case DOUBLE:
+				values[row] = Double.doubleToRawLongBits((Double) val);
+				break;
+			default:
+				values[row] = ((Number) val).longValue();
+			}
+		}
+
+		@Override
+		long dataSize(int rows) {
+			long size = nullable ? bitWords(rows) * 8L : 0;
+			if (type == ColumnType.BOOLEAN) {
+				return size + bitWords(rows) * 8L;
+			}
+			return size + (long) rows * type.width;
+		}
+
+		@Override
+		void write(MappedByteBuffer buf, int rows) {
+			if (nullable) {
+				for (int i = 0; i < bitWords(rows); i++) {
+					buf.putLong(nulls[i]);
+				}
+			}
+			switch (type) {
+			case BOOLEAN:
+				for (int word = 0; word < bitWords(rows); word++) {
+					long bits = 0;
+					int end = Math.min(rows, (word + 1) << 6);
+					for (int row = word << 6; row < end; row++) {
+						bits |= values[row] << row;
+					}
+					buf.putLong(bits);
+				}
+				break;
+			case BYTE:
+				for (int row = 0; row < rows; row++) {
+					buf.put((byte) values[row]);
+				}
+				break;
+			case SHORT:
+			case CHAR:
+				for (int row = 0; row < rows; row++) {
+					buf.putShort((short) values[row]);
+				}
+				break;
+			case INT:
+			case FLOAT:
+				for (int row = 0; row < rows; row++) {
+					buf.putInt((int) values[row]);
+				}
+				break;
+			default:
+				for (int row = 0; row < rows; row++) {
+					buf.putLong(values[row]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores each distinct value once, and an int code per row
+	 */
+	private static final class DictionaryColumn extends Column {
+		private final Map<String, Integer> codesByValue = new HashMap<String, Integer>();
+		private final List<byte[]> entries = new ArrayList<byte[]>();
+		private long entryBytes;
+		private int[] codes = new int[INITIAL_ROWS];
+
+		DictionaryColumn(PropertyDefinition p, ColumnType type) {
+			// nulls are stored as a null code
+			super(p, type, false);
+		}
+
+		@Override
+		void add(int row, Object val) {
+			if (row == codes.length) {
+				codes = Arrays.copyOf(codes, codes.length * 2);
+			}
+			if (val == null) {
+				codes[row] = NULL_CODE;
+				return;
+			}
+			String s = type == ColumnType.ENUM ? ((Enum<?>) val).name() : (String) val;
+			Integer code = codesByValue.get(s);
+			if (code == null) {
+				byte[] bytes = s.getBytes(UTF8);
+				code = entries.size();
+				codesByValue.put(s, code);
+				entries.add(bytes);
+				entryBytes += bytes.length;
+			}
+			codes[row] = code;
+		}
+
+		@Override
+		long dataSize(int rows) {
+			return 4 + 4L * (entries.size() + 1) + 4L * rows + entryBytes;
+		}
+
+		@Override
+		void write(MappedByteBuffer buf, int rows) {
+			buf.putInt(entries.size());
+			int offset = 0;
+			buf.putInt(offset);
+			for (byte[] entry : entries) {
+				offset += entry.length;
+				buf.putInt(offset);
+			}
+			for (int row = 0; row < rows; row++) {
+				buf.putInt(codes[row]);
+			}
+			for (byte[] entry : entries) {
+				buf.put(entry);
+			}
+		}
+	}
+}
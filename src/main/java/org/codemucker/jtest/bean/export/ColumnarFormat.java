@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.nio.charset.Charset;
+
+/**
+ * Constants and layout shared by the {@link ColumnarBeanWriter} and {@link ColumnarBeanReader}.
+ *
+ * <p>
+ * Layout, all values big endian and every column's data starting on an 8 byte boundary:
+ *
+ * <pre>
+ * header:  magic(int) version(int) rowCount(int) columnCount(int)
+ *          per column: type(byte) nullable(byte) nameLength(short) name(UTF-8) dataOffset(long)
+ * columns: [null bits, if nullable] values
+ *          boolean: one bit per row
+ *          numbers and chars: packed at their natural width
+ *          strings and enums: dictionarySize(int) entryOffsets(int[size + 1]) codes(int[rows], -1 for null) entries(UTF-8)
+ * </pre>
+ * </p>
+ */
+final class ColumnarFormat {
+
+	static final int MAGIC = 0x4a544243; // 'JTBC'
+	static final int VERSION = 1;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final int NULL_CODE = -1;
+
+	enum ColumnType {
+		BOOLEAN(0), BYTE(1), SHORT(2), CHAR(2), INT(4), LONG(8), FLOAT(4), DOUBLE(8), STRING(4), ENUM(4);
+
+		/**
+		 * Bytes per row, zero for bit packed columns. For dictionary columns the width of the code
+		 */
+		final int width;
+
+		private ColumnType(int width) {
+			this.width = width;
+		}
+
+		boolean isDictionary() {
+			return this == STRING || this == ENUM;
+		}
+
+		/**
+		 * Return the column type to store properties of the given type in, or null if it can't be stored
+		 */
+		static ColumnType forType(Class<?> type) {
+			if (type == Boolean.TYPE || type == Boolean.class) {
+				return BOOLEAN;
+			} else if (type == Byte.TYPE || type == Byte.class) {
+				return BYTE;
+			} else if (type == Short.TYPE || type == Short.class) {
+				return SHORT;
+			} else if (type == Character.TYPE || type == Character.class) {
+				return CHAR;
+			} else if (type == Integer.TYPE || type == Integer.class) {
+				return INT;
+			} else if (type == Long.TYPE || type == Long.class) {
+				return LONG;
+			} else if (type == Float.TYPE || type == Float.class) {
+				return FLOAT;
+			} else if (type == Double.TYPE || type == Double.class) {
+				return DOUBLE;
+			} else if (type == String.class) {
+				return STRING;
+			} else if (type.isEnum()) {
+				return ENUM;
+			}
+			return null;
+		}
+	}
+
+	private ColumnarFormat() {
+		// static only
+	}
+
+	static long align(long pos) {
+		return (pos + 7) & ~7L;
+	}
+
+	/**
+	 * The number of longs needed to hold one bit per row
+	 */
+	static int bitWords(int rows) {
+		return (rows + 63) >>> 6;
+	}
+}
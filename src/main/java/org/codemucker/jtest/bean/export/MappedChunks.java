@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.codemucker.jtest.JTestException;
+
+/**
+ * Hands out fixed size buffers carved from memory mapped segments of a temp file. Mapped memory is paged by the OS
+ * against the file, so unlike direct buffers it isn't limited by the heap or '-XX:MaxDirectMemorySize', only by free
+ * disk space. Segments are large so a big store needs few mappings.
+ *
+ * <p>
+ * The file is sparse, it only takes disk space for pages actually written. Not thread safe
+ * </p>
+ */
+final class MappedChunks implements Closeable {
+
+	private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	private MappedByteBuffer segment;
+	private long fileBytes;
+	private long allocatedBytes;
+
+	MappedChunks(File dir, String name) {
+		try {
+			if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+				throw new JTestException("Couldn't create dir " + dir.getAbsolutePath());
+			}
+			this.file = File.createTempFile(name + "-", ".offheap", dir);
+			file.deleteOnExit();
+			this.raf = new RandomAccessFile(file, "rw");
+			this.channel = raf.getChannel();
+		} catch (IOException e) {
+			throw new JTestException("Error creating off heap file in " + dir.getAbsolutePath(), e);
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * The total size of the buffers handed out
+	 */
+	long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Return a new zeroed buffer of the given size
+	 */
+	ByteBuffer allocate(int bytes) {
+		if (segment == null || segment.remaining() < bytes) {
+			segment = map(Math.max(SEGMENT_BYTES, bytes));
+		}
+		int start = segment.position();
+		segment.limit(start + bytes);
+		ByteBuffer chunk = segment.slice();
+		segment.limit(segment.capacity());
+		segment.position(start + bytes);
+		allocatedBytes += bytes;
+		return chunk;
+	}
+
+	private MappedByteBuffer map(int bytes) {
+		if (!channel.isOpen()) {
+			throw new JTestException("Off heap file " + file.getAbsolutePath() + " has been closed");
+		}
+		try {
+			// mapping past the end grows the file
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, fileBytes, bytes);
+			fileBytes += bytes;
+			return buf;
+		} catch (IOException e) {
+			throw new JTestException("Error mapping " + bytes + " bytes at " + fileBytes + " of " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Close and delete the file. The mapped memory is released once the buffers handed out are no longer referenced
+	 */
+	@Override
+	public void close() {
+		segment = null;
+		try {
+			raf.close();
+		} catch (IOException e) {
+			throw new JTestException("Error closing " + file.getAbsolutePath(), e);
+		} finally {
+			// on some platforms this only succeeds once the mappings are gone, deleteOnExit catches those
+			file.delete();
+		}
+	}
+}
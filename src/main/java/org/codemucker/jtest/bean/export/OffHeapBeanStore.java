@@ -0,0 +1,558 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.codemucker.jtest.bean.export.ColumnarFormat.UTF8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codemucker.jtest.ProjectLayouts;
+import org.codemucker.jtest.ReflectionUtils;
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.BeanOptions;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyAccessor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+import org.codemucker.jtest.bean.export.ColumnarFormat.ColumnType;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+
+/**
+ * Holds beans off heap, one column per property, for datasets too large to keep as objects. The columns are chunks of a
+ * memory mapped temp file, so they count against neither the heap nor the direct memory limit. The number of rows is
+ * limited by disk space, with the OS paging in whatever is being read. Properties are stored as per
+ * {@link ColumnarBeanWriter}: primitives and their boxes packed, booleans as bits, enums as ordinals and strings as UTF-8.
+ * Properties of other types are not stored.
+ *
+ * <p>
+ * Rows can be read back as new beans, into a reused bean, or straight from a {@link Column}. The typed column getters
+ * don't allocate (bar {@link Column#getString(long)}) so are the ones to use on hot paths. For convenience rows can
+ * also be read through a {@link View}, a reusable implementation of a getter interface written for the purpose. Views
+ * go through a dynamic proxy and box every value returned, so create garbage per call.
+ * </p>
+ *
+ * <p>
+ * Close the store when done to delete the file. Adding is not thread safe. Once filled, and safely published, a store
+ * can be read from any number of threads
+ * </p>
+ */
+public class OffHeapBeanStore<T> implements Closeable {
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+	private static final int STRING_CHUNK_BYTES = 4 * 1024 * 1024;
+	private static final long NULL_REF = -1;
+	private static final int NULL_ORDINAL = -1;
+
+	private final Class<T> beanClass;
+	private final Constructor<T> ctor;
+	private final MappedChunks chunks;
+	private final Column[] columns;
+	private final Map<String, Column> columnsByName = new LinkedHashMap<String, Column>();
+	private final PropertyAccessor[] accessors;
+	private final boolean[] writable;
+	private long size;
+
+	public OffHeapBeanStore(Class<T> beanClass) {
+		this(beanClass, new BeanOptions());
+	}
+
+	public OffHeapBeanStore(Class<T> beanClass, BeanOptions options) {
+		this(beanClass, options, new File(ProjectLayouts.getDefaultResolver().getTmpDir(), "bean-offheap"));
+	}
+
+	/**
+	 * @param dir where to create the file backing the store
+	 */
+	public OffHeapBeanStore(Class<T> beanClass, BeanOptions options, File dir) {
+		this.beanClass = beanClass;
+		List<PropertyDefinition> properties = new ArrayList<PropertyDefinition>();
+		for (PropertyDefinition p : new PropertiesExtractor(options).extractBeanDef(beanClass).getProperties()) {
+			if (!p.isIgnore() && p.getAccessor().canRead() && ColumnType.forType(p.getType()) != null) {
+				properties.add(p);
+			}
+		}
+		columns = new Column[properties.size()];
+		accessors = new PropertyAccessor[properties.size()];
+		writable = new boolean[properties.size()];
+		this.chunks = new MappedChunks(dir, beanClass.getSimpleName());
+		for (int i = 0; i < columns.length; i++) {
+			PropertyDefinition p = properties.get(i);
+			columns[i] = new Column(p.getName(), ColumnType.forType(p.getType()), p.getType(), chunks);
+			columnsByName.put(p.getName(), columns[i]);
+			accessors[i] = p.getAccessor();
+			writable[i] = p.hasMutator() && p.getAccessor().canWrite();
+		}
+		this.ctor = ReflectionUtils.getNoArgCtor(beanClass, options.isMakeAccessible());
+	}
+
+	/**
+	 * Fill a new store with the beans at indexes 0 to count-1 of the sequence for the given seed, see
+	 * {@link BeanRandom#generateAt(Class, long, long)}
+	 */
+	public static <T> OffHeapBeanStore<T> generate(Class<T> beanClass, long seed, long count) {
+		return generate(beanClass, seed, count, new RandomOptions());
+	}
+
+	public static <T> OffHeapBeanStore<T> generate(Class<T> beanClass, long seed, long count, RandomOptions options) {
+		OffHeapBeanStore<T> store = new OffHeapBeanStore<T>(beanClass, options);
+		BeanRandom random = new BeanRandom(options);
+		boolean filled = false;
+		try {
+			for (long i = 0; i < count; i++) {
+				// each bean is garbage as soon as it is copied, so never survives a young collection
+				store.add(random.generateAt(beanClass, seed, i));
+			}
+			filled = true;
+		} finally {
+			if (!filled) {
+				store.close();
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Copy the stored properties of the given bean into a new row
+	 */
+	public void add(T bean) {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].set(size, accessors[i].getValue(bean));
+		}
+		size++;
+	}
+
+	/**
+	 * The number of rows
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * The number of bytes held off heap, in the mapped file
+	 */
+	public long getOffHeapBytes() {
+		long bytes = 0;
+		for (Column column : columns) {
+			bytes += column.getOffHeapBytes();
+		}
+		return bytes;
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(new ArrayList<String>(columnsByName.keySet()));
+	}
+
+	/**
+	 * Return the column for the given property
+	 *
+	 * @throws BeanException if the property is not stored
+	 */
+	public Column getColumn(String name) {
+		Column column = columnsByName.get(name);
+		if (column == null) {
+			throw new BeanException("Property '%s' of %s is not stored, have %s", name, beanClass.getName(), columnsByName.keySet());
+		}
+		return column;
+	}
+
+	/**
+	 * Create a new bean from the given row
+	 */
+	public T get(long row) {
+		if (ctor == null) {
+			throw new BeanException("Bean class %s needs a no arg ctor to be read", beanClass.getName());
+		}
+		return read(row, ReflectionUtils.invokeCtorWith(ctor, new Object[0]));
+	}
+
+	/**
+	 * Set the stored properties of the given bean to the values at the given row
+	 *
+	 * @return the given bean
+	 */
+	public T read(long row, T bean) {
+		checkRow(row);
+		for (int i = 0; i < columns.length; i++) {
+			if (writable[i]) {
+				Object val = columns[i].getValue(row);
+				if (val != null || !columns[i].propertyType.isPrimitive()) {
+					accessors[i].setValue(bean, val);
+				}
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Create a view implementing the given interface, whose getters return the values of the same named properties at the
+	 * view's current row. Views are cheap to move but not thread safe, create one per thread. Each getter call boxes the
+	 * value, use the {@link Column} getters where that matters
+	 *
+	 * @throws BeanException if a method of the interface is not a getter of a stored property
+	 */
+	public <V> View<V> newView(Class<V> viewType) {
+		if (!viewType.isInterface()) {
+			throw new BeanException("Views must be interfaces, %s is not", viewType.getName());
+		}
+		Map<Method, Column> columnsByMethod = new HashMap<Method, Column>();
+		for (Method m : viewType.getMethods()) {
+			String name = m.getParameterTypes().length == 0 ? ReflectionUtils.extractPropertyNameFromMethod(m.getName()) : null;
+			Column column = name == null ? null : columnsByName.get(name);
+			if (column == null) {
+				throw new BeanException("Method %s of view %s is not a getter of a stored property of %s", m.getName(), viewType.getName(), beanClass.getName());
+			}
+			columnsByMethod.put(m, column);
+		}
+		return new View<V>(viewType, columnsByMethod);
+	}
+
+	/**
+	 * Release the off heap memory and delete the backing file. The store is empty afterwards
+	 */
+	@Override
+	public void close() {
+		for (Column column : columns) {
+			column.release();
+		}
+		size = 0;
+		chunks.close();
+	}
+
+	private void checkRow(long row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+		}
+	}
+
+	/**
+	 * A reusable object implementing a getter interface over one row at a time. Backed by a dynamic proxy, so every call
+	 * is reflective and returns a boxed value
+	 */
+	public final class View<V> implements InvocationHandler {
+		private final Map<Method, Column> columnsByMethod;
+		private final V proxy;
+		private long row;
+
+		private View(Class<V> viewType, Map<Method, Column> columnsByMethod) {
+			this.columnsByMethod = columnsByMethod;
+			this.proxy = viewType.cast(Proxy.newProxyInstance(viewType.getClassLoader(), new Class<?>[] { viewType }, this));
+		}
+
+		/**
+		 * Point the view at the given row
+		 *
+		 * @return the view's getter interface
+		 */
+		public V moveTo(long row) {
+			checkRow(row);
+			this.row = row;
+			return proxy;
+		}
+
+		/**
+		 * The getter interface, reading from the current row
+		 */
+		public V get() {
+			return proxy;
+		}
+
+		public long getRow() {
+			return row;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			Column column = columnsByMethod.get(method);
+			if (column != null) {
+				Object val = column.getValue(row);
+				if (val == null && method.getReturnType().isPrimitive()) {
+					throw new BeanException("Property '%s' is null at row %d, can't return it as a %s", column.name, row, method.getReturnType());
+				}
+				return val;
+			}
+			// the Object methods
+			String name = method.getName();
+			if ("equals".equals(name)) {
+				return proxy == args[0];
+			} else if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			}
+			return "View[" + beanClass.getSimpleName() + ", row " + row + "]";
+		}
+	}
+
+	/**
+	 * The values of a single property. The typed getters read straight from off heap memory, and bar the string one don't
+	 * allocate
+	 */
+	public static final class Column {
+		private final String name;
+		private final ColumnType type;
+		private final Class<?> propertyType;
+		private final boolean nullable;
+		private final int width;
+		private final Object[] enumConstants;
+		private final MappedChunks chunks;
+
+		private final List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+		private final List<ByteBuffer> nulls = new ArrayList<ByteBuffer>();
+
+		// string columns only, rows hold a reference (chunk << 32 | offset) to a length prefixed entry
+		private final List<ByteBuffer> strings = new ArrayList<ByteBuffer>();
+
+		// rows written, each column has the same number as the store
+		private long rows;
+
+		Column(String name, ColumnType type, Class<?> propertyType, MappedChunks chunks) {
+			this.name = name;
+			this.chunks = chunks;
+			this.type = type;
+			this.propertyType = propertyType;
+			this.nullable = !propertyType.isPrimitive() && !type.isDictionary();
+			this.width = type == ColumnType.STRING ? 8 : type.width;
+			this.enumConstants = type == ColumnType.ENUM ? propertyType.getEnumConstants() : null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		long getOffHeapBytes() {
+			return capacity(values) + capacity(nulls) + capacity(strings);
+		}
+
+		private static long capacity(List<ByteBuffer> buffers) {
+			long bytes = 0;
+			for (ByteBuffer buf : buffers) {
+				bytes += buf.capacity();
+			}
+			return bytes;
+		}
+
+		void release() {
+			values.clear();
+			nulls.clear();
+			strings.clear();
+			rows = 0;
+		}
+
+		void set(long row, Object val) {
+			int chunk = (int) (row >>> CHUNK_SHIFT);
+			if (chunk == values.size()) {
+				// booleans are one bit per row
+				values.add(chunks.allocate(width == 0 ? CHUNK_ROWS / 8 : CHUNK_ROWS * width));
+				if (nullable) {
+					nulls.add(chunks.allocate(CHUNK_ROWS / 8));
+				}
+			}
+			rows = Math.max(rows, row + 1);
+			ByteBuffer buf = values.get(chunk);
+			int i = (int) (row & CHUNK_MASK);
+			if (val == null) {
+				if (type == ColumnType.STRING) {
+					buf.putLong(i * 8, NULL_REF);
+				} else if (type == ColumnType.ENUM) {
+					buf.putInt(i * 4, NULL_ORDINAL);
+				} else {
+					setBit(nulls.get(chunk), i);
+				}
+				return;
+			}
+			switch (type) {
+			case BOOLEAN:
+				if ((Boolean) val) {
+					setBit(buf, i);
+				}
+				break;
+			case BYTE:
+				buf.put(i, (Byte) val);
+				break;
+			case SHORT:
+				buf.putShort(i * 2, (Short) val);
+				break;
+			case CHAR:
+				buf.putChar(i * 2, (Character) val);
+				break;
+			case INT:
+				buf.putInt(i * 4, (Integer) val);
+				break;
+			case LONG:
+				buf.putLong(i * 8, (Long) val);
+				break;
+			case FLOAT:
+				buf.putFloat(i * 4, (Float) val);
+				break;
+			case DOUBLE:
+				buf.putDouble(i * 8, (Double) val);
+				break;
+			case ENUM:
+				buf.putInt(i * 4, ((Enum<?>) val).ordinal());
+				break;
+			default:
+				buf.putLong(i * 8, addString((String) val));
+			}
+		}
+
+		private long addString(String s) {
+			byte[] bytes = s.getBytes(UTF8);
+			ByteBuffer current = strings.isEmpty() ? null : strings.get(strings.size() - 1);
+			if (current == null || current.remaining() < 4 + bytes.length) {
+				current = chunks.allocate(Math.max(STRING_CHUNK_BYTES, 4 + bytes.length));
+				strings.add(current);
+			}
+			long ref = ((long) (strings.size() - 1) << 32) | current.position();
+			current.putInt(bytes.length);
+			current.put(bytes);
+			return ref;
+		}
+
+		private static void setBit(ByteBuffer buf, int i) {
+			buf.put(i >>> 3, (byte) (buf.get(i >>> 3) | (1 << (i & 7))));
+		}
+
+		private static boolean getBit(ByteBuffer buf, int i) {
+			return (buf.get(i >>> 3) & (1 << (i & 7))) != 0;
+		}
+
+		private ByteBuffer chunk(long row) {
+			return values.get((int) (row >>> CHUNK_SHIFT));
+		}
+
+		private void checkRow(long row) {
+			if (row < 0 || row >= rows) {
+				throw new IndexOutOfBoundsException("row " + row + ", size " + rows);
+			}
+		}
+
+		public boolean isNull(long row) {
+			checkRow(row);
+			int i = (int) (row & CHUNK_MASK);
+			if (type == ColumnType.STRING) {
+				return chunk(row).getLong(i * 8) == NULL_REF;
+			} else if (type == ColumnType.ENUM) {
+				return chunk(row).getInt(i * 4) == NULL_ORDINAL;
+			}
+			return nullable && getBit(nulls.get((int) (row >>> CHUNK_SHIFT)), i);
+		}
+
+		public boolean getBoolean(long row) {
+			if (type != ColumnType.BOOLEAN) {
+				throw new BeanException("Property '%s' holds %s values, not booleans", name, type);
+			}
+			checkRow(row);
+			return getBit(chunk(row), (int) (row & CHUNK_MASK));
+		}
+
+		/**
+		 * Return the value of an integral or char property, or the ordinal of an enum (-1 if null)
+		 */
+		public long getLong(long row) {
+			checkRow(row);
+			int i = (int) (row & CHUNK_MASK);
+			switch (type) {
+			case BYTE:
+				return chunk(row).get(i);
+			case SHORT:
+				return chunk(row).getShort(i * 2);
+			case CHAR:
+				return chunk(row).getChar(i * 2);
+			case INT:
+			case ENUM:
+				return chunk(row).getInt(i * 4);
+			case LONG:
+				return chunk(row).getLong(i * 8);
+			default:
+				throw new BeanException("Property '%s' holds %s values, not integers", name, type);
+			}
+		}
+
+		/**
+		 * Return the value of a numeric property
+		 */
+		public double getDouble(long row) {
+			checkRow(row);
+			if (type == ColumnType.FLOAT) {
+				return chunk(row).getFloat((int) (row & CHUNK_MASK) * 4);
+			} else if (type == ColumnType.DOUBLE) {
+				return chunk(row).getDouble((int) (row & CHUNK_MASK) * 8);
+			}
+			return getLong(row);
+		}
+
+		public String getString(long row) {
+			if (type != ColumnType.STRING) {
+				throw new BeanException("Property '%s' holds %s values, not strings", name, type);
+			}
+			checkRow(row);
+			long ref = chunk(row).getLong((int) (row & CHUNK_MASK) * 8);
+			if (ref == NULL_REF) {
+				return null;
+			}
+			ByteBuffer buf = strings.get((int) (ref >>> 32)).duplicate();
+			buf.position((int) ref);
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			return new String(bytes, UTF8);
+		}
+
+		/**
+		 * Return the boxed value at the given row
+		 */
+		public Object getValue(long row) {
+			if (isNull(row)) {
+				return null;
+			}
+			switch (type) {
+			case BOOLEAN:
+				return getBoolean(row);
+			case BYTE:
+				return (byte) getLong(row);
+			case SHORT:
+				return (short) getLong(row);
+			case CHAR:
+				return (char) getLong(row);
+			case INT:
+				return (int) getLong(row);
+			case LONG:
+				return getLong(row);
+			case FLOAT:
+				return (float) getDouble(row);
+			case DOUBLE:
+				return getDouble(row);
+			case ENUM:
+				return enumConstants[(int) getLong(row)];
+			default:
+				return getString(row);
+			}
+		}
+	}
+}
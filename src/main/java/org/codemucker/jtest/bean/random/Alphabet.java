@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.Arrays;
+
+/**
+ * The characters a generated string is made of. Fills whole char arrays at once, drawing two characters from each random
+ * long.
+ */
+public abstract class Alphabet {
+
+	/**
+	 * a-z, A-Z and 0-9
+	 */
+	public static final Alphabet ALPHANUMERIC = of("abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789");
+
+	/**
+	 * All the printable ASCII characters, including space
+	 */
+	public static final Alphabet ASCII = range(0x20, 0x7E);
+
+	/**
+	 * All the printable ISO-8859-1 characters, including space
+	 */
+	public static final Alphabet LATIN_1 = of(ASCII, range(0xA0, 0xFF));
+
+	/**
+	 * Any assigned unicode character which isn't a control or private use character. Mostly drawn from the basic
+	 * multilingual plane, with one in 16 a supplementary character (as a surrogate pair)
+	 */
+	public static final Alphabet UNICODE = new UnicodeAlphabet();
+
+	/**
+	 * Fill the given range of the buffer with random characters
+	 */
+	public abstract void fill(ExtendedRandom random, char[] buf, int offset, int len);
+
+	/**
+	 * An alphabet of exactly the given characters
+	 */
+	public static Alphabet of(String chars) {
+		if (chars == null || chars.length() == 0) {
+			throw new IllegalArgumentException("need at least one character");
+		}
+		return new TableAlphabet(chars.toCharArray());
+	}
+
+	/**
+	 * An alphabet of all the characters between first and last, inclusive
+	 */
+	public static Alphabet range(int first, int last) {
+		if (first < 0 || last > Character.MAX_VALUE || last < first) {
+			throw new IllegalArgumentException(String.format("invalid char range %d to %d", first, last));
+		}
+		char[] chars = new char[last - first + 1];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (first + i);
+		}
+		return new TableAlphabet(chars);
+	}
+
+	/**
+	 * An alphabet made up of all the characters in the given table based alphabets
+	 */
+	public static Alphabet of(Alphabet... alphabets) {
+		StringBuilder sb = new StringBuilder();
+		for (Alphabet alphabet : alphabets) {
+			if (!(alphabet instanceof TableAlphabet)) {
+				throw new IllegalArgumentException("can only combine alphabets with a fixed set of chars");
+			}
+			sb.append(((TableAlphabet) alphabet).chars);
+		}
+		return of(sb.toString());
+	}
+
+	private static class TableAlphabet extends Alphabet {
+		private final char[] chars;
+
+		TableAlphabet(char[] chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public void fill(ExtendedRandom random, char[] buf, int offset, int len) {
+			final char[] table = chars;
+			final long size = table.length;
+			int i = offset;
+			int end = offset + len;
+			// two chars per random long, picking each by multiply and shift rather than a modulo
+			while (i + 1 < end) {
+				long rnd = random.nextLong();
+				buf[i++] = table[(int) (((rnd >>> 32) * size) >>> 32)];
+				buf[i++] = table[(int) (((rnd & 0xFFFFFFFFL) * size) >>> 32)];
+			}
+			if (i < end) {
+				buf[i] = table[(int) (((random.nextLong() >>> 32) * size) >>> 32)];
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "chars[" + new String(chars) + "]";
+		}
+	}
+
+	private static class UnicodeAlphabet extends Alphabet {
+		// must be a power of two
+		private static final int SUPPLEMENTARY_ONE_IN = 16;
+
+		@Override
+		public void fill(ExtendedRandom random, char[] buf, int offset, int len) {
+			final char[] bmp = UnicodeTables.BMP;
+			final long bmpSize = bmp.length;
+			final long supplementarySize = UnicodeTables.NUM_SUPPLEMENTARY;
+			int i = offset;
+			int end = offset + len;
+			// pick the char from the top half of each random long, and whether it's supplementary from the bottom bits
+			while (i < end) {
+				long rnd = random.nextLong();
+				if ((rnd & (SUPPLEMENTARY_ONE_IN - 1)) == 0 && i + 1 < end) {
+					int cp = UnicodeTables.supplementary((int) (((rnd >>> 32) * supplementarySize) >>> 32));
+					buf[i++] = Character.highSurrogate(cp);
+					buf[i++] = Character.lowSurrogate(cp);
+				} else {
+					buf[i++] = bmp[(int) (((rnd >>> 32) * bmpSize) >>> 32)];
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "unicode";
+		}
+	}
+
+	/**
+	 * The usable unicode characters, worked out once on first use so only those who want unicode pay for it. All the
+	 * BMP chars are held in a table, the far larger but sparser supplementary planes as runs of usable code points
+	 */
+	private static class UnicodeTables {
+		static final char[] BMP;
+		// the first code point of each run of usable supplementary code points
+		private static final int[] RUN_STARTS;
+		// the number of usable supplementary code points before each run
+		private static final int[] RUN_OFFSETS;
+		static final int NUM_SUPPLEMENTARY;
+
+		static {
+			StringBuilder bmp = new StringBuilder(Character.MIN_SUPPLEMENTARY_CODE_POINT);
+			for (int cp = 0; cp < Character.MIN_SUPPLEMENTARY_CODE_POINT; cp++) {
+				if (isUsable(cp)) {
+					bmp.append((char) cp);
+				}
+			}
+			BMP = bmp.toString().toCharArray();
+
+			int[] starts = new int[1024];
+			int[] offsets = new int[1024];
+			int numRuns = 0;
+			int count = 0;
+			boolean inRun = false;
+			for (int cp = Character.MIN_SUPPLEMENTARY_CODE_POINT; cp <= Character.MAX_CODE_POINT; cp++) {
+				boolean usable = isUsable(cp);
+				if (usable && !inRun) {
+					if (numRuns == starts.length) {
+						starts = Arrays.copyOf(starts, numRuns * 2);
+						offsets = Arrays.copyOf(offsets, numRuns * 2);
+					}
+					starts[numRuns] = cp;
+					offsets[numRuns] = count;
+					numRuns++;
+				}
+				if (usable) {
+					count++;
+				}
+				inRun = usable;
+			}
+			RUN_STARTS = Arrays.copyOf(starts, numRuns);
+			RUN_OFFSETS = Arrays.copyOf(offsets, numRuns);
+			NUM_SUPPLEMENTARY = count;
+		}
+
+		private static boolean isUsable(int cp) {
+			switch (Character.getType(cp)) {
+			case Character.UNASSIGNED:
+			case Character.CONTROL:
+			case Character.PRIVATE_USE:
+			case Character.SURROGATE:
+				return false;
+			default:
+				return true;
+			}
+		}
+
+		/**
+		 * Return the usable supplementary code point at the given index, counting only usable ones
+		 */
+		static int supplementary(int index) {
+			int run = Arrays.binarySearch(RUN_OFFSETS, index);
+			if (run < 0) {
+				// the run before the insertion point
+				run = -run - 2;
+			}
+			return RUN_STARTS[run] + index - RUN_OFFSETS[run];
+		}
+	}
+}
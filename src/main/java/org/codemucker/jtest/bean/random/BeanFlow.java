@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+/**
+ * Interfaces for publishing beans to subscribers which control the rate through demand. They mirror the reactive streams
+ * interfaces of java.util.concurrent.Flow, so adapting either way is a one line delegation per method.
+ */
+public final class BeanFlow {
+
+	private BeanFlow() {
+		// interfaces only
+	}
+
+	public static interface Publisher<T> {
+		/**
+		 * Start publishing to the given subscriber. Each subscription has its own demand and is delivered the
+		 * publisher's sequence from the start, so every subscriber receives the same beans
+		 */
+		void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public static interface Subscriber<T> {
+		void onSubscribe(Subscription subscription);
+
+		void onNext(T item);
+
+		void onError(Throwable error);
+
+		void onComplete();
+	}
+
+	public static interface Subscription {
+		/**
+		 * Allow up to n more beans to be delivered. Demand adds up, Long.MAX_VALUE means unbounded
+		 */
+		void request(long n);
+
+		/**
+		 * Stop delivering beans. Beans already being delivered may still arrive
+		 */
+		void cancel();
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.codemucker.jtest.JTestException;
+
+/**
+ * Feeds generated beans to a {@link BeanSink} at a fixed rate across a number of threads, recording how long each call
+ * took.
+ *
+ * <p>
+ * The driver is open loop: the n-th call is scheduled for start + n / rate whatever happened to the calls before it, and
+ * latency is measured from that scheduled time, not from when the call actually started. A stall in the sink therefore
+ * shows up in the latency of every call which should have been made during it, rather than hiding as a single slow
+ * sample (coordinated omission). The time from the actual start is recorded separately as the service time.
+ * </p>
+ *
+ * <p>
+ * Bean n is the bean at index n of the keyed sequence for the seed (see {@link BeanRandom#generateAt(Class, long, long)}).
+ * Each worker generates its next bean before waiting for that call's scheduled time, so generation is not part of the
+ * service time. It is not free though: a worker which can't generate beans as fast as its share of the rate starts its
+ * calls late, and that shows in their latency. Use more threads if generation falls behind.
+ * </p>
+ *
+ * <p>
+ * Anything the sink throws, assertion errors included, counts as a failed call and the load carries on. Only errors
+ * from the JVM itself, such as running out of memory, stop the run.
+ * </p>
+ */
+public class BeanLoadDriver<T> {
+
+	// below this wait, spin rather than park, as parking overshoots by tens of micros
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final BeanRandom random;
+	private final Class<T> beanClass;
+	private final BeanSink<? super T> sink;
+
+	private double ratePerSecond = 1000;
+	private int threads = 1;
+	private long count = Long.MAX_VALUE;
+	private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+	private long seed;
+
+	public BeanLoadDriver(BeanRandom random, Class<T> beanClass, BeanSink<? super T> sink) {
+		this.random = random;
+		this.beanClass = beanClass;
+		this.sink = sink;
+	}
+
+	/**
+	 * The total number of calls per second, across all threads
+	 */
+	public BeanLoadDriver<T> rate(double ratePerSecond) {
+		if (ratePerSecond <= 0) {
+			throw new IllegalArgumentException("rate must be positive, was " + ratePerSecond);
+		}
+		this.ratePerSecond = ratePerSecond;
+		return this;
+	}
+
+	public BeanLoadDriver<T> threads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("need at least one thread, was " + threads);
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Stop after this many calls, or the duration, whichever comes first
+	 */
+	public BeanLoadDriver<T> count(long count) {
+		this.count = count;
+		return this;
+	}
+
+	/**
+	 * Stop scheduling calls after this long, or the count, whichever comes first
+	 */
+	public BeanLoadDriver<T> duration(long duration, TimeUnit unit) {
+		this.durationNanos = unit.toNanos(duration);
+		return this;
+	}
+
+	public BeanLoadDriver<T> seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Run the load, blocking until every scheduled call has completed
+	 */
+	public Result run() {
+		final double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+		List<Worker> workers = new ArrayList<Worker>(threads);
+		for (int i = 0; i < threads; i++) {
+			Worker worker = new Worker(i, start, intervalNanos);
+			worker.setName("bean-load-driver-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+		}
+		for (Worker worker : workers) {
+			worker.start();
+		}
+		LatencyHistogram latency = new LatencyHistogram();
+		LatencyHistogram serviceTime = new LatencyHistogram();
+		long errors = 0;
+		for (Worker worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JTestException("Interrupted waiting for load to complete", e);
+			}
+			if (worker.failure != null) {
+				throw worker.failure;
+			}
+			latency.add(worker.latency);
+			serviceTime.add(worker.serviceTime);
+			errors += worker.errors;
+		}
+		return new Result(latency, serviceTime, errors, System.nanoTime() - start);
+	}
+
+	private final class Worker extends Thread {
+		private final int index;
+		private final long start;
+		private final double intervalNanos;
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LatencyHistogram serviceTime = new LatencyHistogram();
+		long errors;
+		JTestException failure;
+
+		Worker(int index, long start, double intervalNanos) {
+			this.index = index;
+			this.start = start;
+			this.intervalNanos = intervalNanos;
+		}
+
+		@Override
+		public void run() {
+			for (long n = index; n < count; n += threads) {
+				long offset = (long) (n * intervalNanos);
+				if (offset >= durationNanos) {
+					break;
+				}
+				long scheduled = start + offset;
+				T bean;
+				try {
+					bean = random.generateAt(beanClass, seed, n);
+				} catch (Throwable t) {
+					failure = new JTestException("Error generating bean " + n + " for load", t);
+					return;
+				}
+				waitUntil(scheduled);
+				long started = System.nanoTime();
+				try {
+					sink.accept(bean);
+				} catch (VirtualMachineError e) {
+					failure = new JTestException("Sink failed on bean " + n + ", stopping load", e);
+					return;
+				} catch (Throwable t) {
+					errors++;
+				}
+				long ended = System.nanoTime();
+				latency.record(ended - scheduled);
+				serviceTime.record(ended - started);
+			}
+		}
+
+		private void waitUntil(long time) {
+			long remaining;
+			while ((remaining = time - System.nanoTime()) > 0) {
+				if (remaining > SPIN_NANOS) {
+					LockSupport.parkNanos(remaining - SPIN_NANOS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a run. Latencies are in nanoseconds
+	 */
+	public static class Result {
+		private final LatencyHistogram latency;
+		private final LatencyHistogram serviceTime;
+		private final long errors;
+		private final long elapsedNanos;
+
+		Result(LatencyHistogram latency, LatencyHistogram serviceTime, long errors, long elapsedNanos) {
+			this.latency = latency;
+			this.serviceTime = serviceTime;
+			this.errors = errors;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * Time from when each call was scheduled to when it completed
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Time from when each call actually started to when it completed
+		 */
+		public LatencyHistogram getServiceTime() {
+			return serviceTime;
+		}
+
+		/**
+		 * The number of calls made, including those which threw
+		 */
+		public long getCount() {
+			return latency.getTotalCount();
+		}
+
+		/**
+		 * The number of calls where the sink threw, including assertion errors
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * Completed calls per second
+		 */
+		public double getThroughput() {
+			return elapsedNanos <= 0 ? 0 : getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("throughput=%.1f/s, errors=%d, latency[%s], service time[%s]", getThroughput(), errors, latency, serviceTime);
+		}
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import static org.codemucker.jtest.ReflectionUtils.invokeCtorWith;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codemucker.jtest.bean.BeanDefinition;
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.PropertyAccessor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+
+/**
+ * A populator specialised for a single bean class. Everything which only depends on the class (the ctor to call, which
+ * properties to set, the writer and generator for each) is resolved once when the populator is built, so populating a
+ * bean is a straight run of ctor call and setter calls with no per property lookups or reflection.
+ */
+class BeanPopulator {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final MethodType CTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+	private static final Object[] NO_ARGS = new Object[0];
+	// keeps ctor arg keys apart from property keys
+	private static final long ARG_KEY_SALT = 0x632be59bd9b4e019L;
+
+	private final Class<?> beanType;
+	private final Constructor<?> ctor;
+	private final MethodHandle ctorHandle;
+
+	private final Class<?>[] argTypes;
+	private final Type[] argGenericTypes;
+	private final RandomGenerator<?>[] argGenerators;
+	private final PathGenerator[] argPathGenerators;
+
+	private final PropertyStep[] steps;
+
+	// set when every value is to be derived from the bean's key and the property path, see BeanRandom#generateAt
+	private final BeanRandom keyedOwner;
+
+	BeanPopulator(BeanRandom random, BeanDefinition def) {
+		this.beanType = def.getBeanType();
+		this.keyedOwner = random.isKeyed() ? random : null;
+		// without a ctor beans can't be created, but existing ones can still be repopulated
+		this.ctor = def.getCtor();
+		this.ctorHandle = ctor == null ? null : unreflectCtor(ctor);
+
+		argTypes = ctor == null ? new Class<?>[0] : ctor.getParameterTypes();
+		argGenericTypes = ctor == null ? new Type[0] : ctor.getGenericParameterTypes();
+		argGenerators = new RandomGenerator<?>[argTypes.length];
+		argPathGenerators = new PathGenerator[argTypes.length];
+		for (int i = 0; i < argTypes.length; i++) {
+			argGenerators[i] = random.resolveGenerator(beanType, null, argTypes[i], argGenericTypes[i]);
+			argPathGenerators[i] = asPathGenerator(argGenerators[i]);
+		}
+
+		List<PropertyStep> steps = new ArrayList<PropertyStep>();
+		for (PropertyDefinition p : def.getProperties()) {
+			if (!p.isIgnore() && p.hasMutator()) {
+				steps.add(new PropertyStep(p, random.resolveGenerator(beanType, p.getName(), p.getType(), p.getGenericType())));
+			}
+		}
+		this.steps = steps.toArray(new PropertyStep[steps.size()]);
+	}
+
+	private static PathGenerator asPathGenerator(RandomGenerator<?> generator) {
+		return generator instanceof PathGenerator ? (PathGenerator) generator : null;
+	}
+
+	private static MethodHandle unreflectCtor(Constructor<?> ctor) {
+		try {
+			return LOOKUP.unreflectConstructor(ctor).asSpreader(Object[].class, ctor.getParameterTypes().length).asType(CTOR_TYPE);
+		} catch (IllegalAccessException e) {
+			// match the failure of a reflective invoke, which happens when the bean is first created
+			return null;
+		}
+	}
+
+	Class<?> getBeanType() {
+		return beanType;
+	}
+
+	/**
+	 * Create and populate a new bean
+	 * 
+	 * @param path the path the bean is being created at, used to skip ignored properties
+	 */
+	Object populate(PropertyPath path) {
+		return populate(path, newArgs());
+	}
+
+	/**
+	 * Return a buffer for the ctor args, which can be passed to repeated {@link #populate(PropertyPath, Object[])} calls
+	 */
+	Object[] newArgs() {
+		return argTypes.length == 0 ? NO_ARGS : new Object[argTypes.length];
+	}
+
+	/**
+	 * Create and populate a new bean, generating the ctor args into the given buffer. The buffer is only used for the
+	 * duration of the call so may be reused, but not by nested or concurrent calls
+	 */
+	Object populate(PropertyPath path, Object[] args) {
+		if (ctor == null) {
+			throw new BeanException(
+			        "Could not find a valid ctor for bean class %s. Are you sure your bean ctor is public (or if you have no ctor that your bean is public) and the bean is not a non static inner class?",
+			        beanType.getName());
+		}
+		if (keyedOwner != null) {
+			return populateKeyed(path, args, keyedOwner.getKeyedRandom());
+		}
+		for (int i = 0; i < args.length; i++) {
+			if (argPathGenerators[i] != null) {
+				args[i] = argPathGenerators[i].generateRandom(path, beanType, null, argTypes[i], argGenericTypes[i]);
+			} else {
+				args[i] = argGenerators[i].generateRandom(beanType, null, argTypes[i], argGenericTypes[i]);
+			}
+		}
+		Object bean = newInstance(args);
+		boolean[] skip = path.getSkip(this);
+		if (skip == null) {
+			for (PropertyStep step : steps) {
+				step.populate(path, bean);
+			}
+		} else {
+			for (int i = 0; i < steps.length; i++) {
+				if (!skip[i]) {
+					steps[i].populate(path, bean);
+				}
+			}
+		}
+		return bean;
+	}
+
+	/**
+	 * Create and populate a new bean, reseeding the random before each value from the current base seed and the key of the
+	 * value (derived from the bean's path and the property name or arg position). Nested beans get a new base drawn from
+	 * the parent property's sequence, so the elements of a collection of beans differ
+	 */
+	private Object populateKeyed(PropertyPath path, Object[] args, KeyedRandom random) {
+		long parentBase = random.getBase();
+		if (path.getParent() != null) {
+			random.setBase(random.nextLong());
+		}
+		try {
+			for (int i = 0; i < args.length; i++) {
+				random.reseedFor(ExtendedRandom.seedFor(path.getId(), ARG_KEY_SALT ^ i));
+				if (argPathGenerators[i] != null) {
+					args[i] = argPathGenerators[i].generateRandom(path, beanType, null, argTypes[i], argGenericTypes[i]);
+				} else {
+					args[i] = argGenerators[i].generateRandom(beanType, null, argTypes[i], argGenericTypes[i]);
+				}
+			}
+			Object bean = newInstance(args);
+			boolean[] skip = path.getSkip(this);
+			for (int i = 0; i < steps.length; i++) {
+				if (skip == null || !skip[i]) {
+					random.reseedFor(ExtendedRandom.seedFor(path.getId(), steps[i].key));
+					steps[i].populate(path, bean);
+				}
+			}
+			return bean;
+		} finally {
+			random.setBase(parentBase);
+		}
+	}
+
+	/**
+	 * Re-randomize the properties of an existing bean, refilling nested beans and collections in place where possible
+	 */
+	void repopulate(PropertyPath path, Object bean) {
+		boolean[] skip = path.getSkip(this);
+		for (int i = 0; i < steps.length; i++) {
+			if (skip == null || !skip[i]) {
+				steps[i].repopulate(path, bean);
+			}
+		}
+	}
+
+	/**
+	 * Return a copy of the given bean which doesn't equal it. The copy is created via the ctor (no arg if there is one, so
+	 * nothing is generated), given the same property values, then properties are perturbed one at a time until the beans
+	 * differ
+	 *
+	 * @throws BeanException if changing the properties doesn't make the beans differ
+	 */
+	Object perturb(PropertyPath path, Object org, Perturber perturber) {
+		Object copy = argTypes.length == 0 && ctor != null ? newInstance(NO_ARGS) : populate(path);
+		for (PropertyStep step : steps) {
+			if (step.writer.canRead()) {
+				step.writer.setValue(copy, step.writer.getValue(org));
+			}
+		}
+		for (PropertyStep step : steps) {
+			if (!copy.equals(org)) {
+				return copy;
+			}
+			if (step.writer.canRead()) {
+				try {
+					step.writer.setValue(copy, perturber.perturb(step.writer.getValue(org), beanType, step.name, step.type, step.genericType));
+				} catch (BeanException e) {
+					// can't be changed, try the next
+				}
+			}
+		}
+		if (!copy.equals(org)) {
+			return copy;
+		}
+		throw new BeanException("Could not create a %s which differs from %s by changing its properties", beanType.getName(), org);
+	}
+
+	/**
+	 * Work out which property steps are ignored when populating a bean at the given path
+	 * 
+	 * @return null if none are ignored
+	 */
+	boolean[] calculateSkip(PropertyPath path) {
+		if (!path.hasIgnores()) {
+			return null;
+		}
+		boolean[] skip = new boolean[steps.length];
+		boolean any = false;
+		for (int i = 0; i < steps.length; i++) {
+			skip[i] = path.isIgnored(steps[i].name);
+			any |= skip[i];
+		}
+		return any ? skip : null;
+	}
+
+	private Object newInstance(Object[] args) {
+		if (ctorHandle == null) {
+			// no access, let reflection raise the appropriate error
+			return invokeCtorWith(ctor, args);
+		}
+		try {
+			return (Object) ctorHandle.invokeExact(args);
+		} catch (Throwable t) {
+			throw new BeanException("Error invoking ctor for type %s with args %s", t, beanType.getName(), Arrays.deepToString(args));
+		}
+	}
+
+	private final class PropertyStep {
+		private final String name;
+		private final Class<?> type;
+		private final Type genericType;
+		private final PropertyAccessor writer;
+		private final RandomGenerator<?> generator;
+		private final PathGenerator pathGenerator;
+		private final InPlaceGenerator inPlaceGenerator;
+		private final long key;
+
+		PropertyStep(PropertyDefinition p, RandomGenerator<?> generator) {
+			this.name = p.getName();
+			// a 64 bit hash of the whole name, String.hashCode collides too easily ("Aa" and "BB")
+			this.key = ExtendedRandom.mix64(PropertyPath.hash(0, name));
+			this.type = p.getType();
+			this.genericType = p.getGenericType();
+			this.writer = p.getAccessor();
+			this.generator = generator;
+			this.pathGenerator = asPathGenerator(generator);
+			this.inPlaceGenerator = generator instanceof InPlaceGenerator && writer.canRead() ? (InPlaceGenerator) generator : null;
+		}
+
+		void populate(PropertyPath path, Object bean) {
+			Object val;
+			if (pathGenerator != null) {
+				val = pathGenerator.generateRandom(path, beanType, name, type, genericType);
+			} else {
+				val = generator.generateRandom(beanType, name, type, genericType);
+			}
+			try {
+				writer.setValue(bean, val);
+			} catch (BeanException e) {
+				throw new BeanException("Error setting property '%s' on bean %s", e, name, beanType.getName());
+			}
+		}
+
+		void repopulate(PropertyPath path, Object bean) {
+			if (inPlaceGenerator != null) {
+				Object current = writer.getValue(bean);
+				if (current != null && inPlaceGenerator.regenerateInPlace(path, beanType, name, type, genericType, current)) {
+					return;
+				}
+			}
+			populate(path, bean);
+		}
+	}
+}
@@ -16,15 +16,21 @@
 package org.codemucker.jtest.bean.random;
 
 import static org.codemucker.jtest.ReflectionUtils.invokeCtorWith;
-import static org.codemucker.jtest.ReflectionUtils.invokeMethod;
-import static org.codemucker.jtest.ReflectionUtils.setFieldValue;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.codemucker.jtest.bean.BeanDefinition;
 import org.codemucker.jtest.bean.BeanException;
@@ -33,50 +39,377 @@ import org.codemucker.jtest.bean.PropertiesExtractor;
 import org.codemucker.jtest.bean.PropertyDefinition;
 
 
+/**
+ * Populates beans with random values.
+ *
+ * <p>
+ * Once configured an instance can be shared between threads. All per call state (where in the bean graph we are) is
+ * passed down the call as a {@link PropertyPath}, and the cached population plan is held in concurrent maps. The options
+ * must not be modified while the instance is in use by other threads.
+ * </p>
+ */
 public class BeanRandom implements RandomGenerator {
 
 	private final PropertiesExtractor extractor;
 	
 	private static Map<Class<?>, RandomGenerator<?>> builtInProviders = new HashMap<Class<?>, RandomGenerator<?>>();
 
-	private final PrimitiveGenerator primitiveProvider = new PrimitiveGenerator();
-	private final CollectionGenerator collectionProvider = new CollectionGenerator(this);
-	private final EnumGenerator enumProvider = new EnumGenerator();
+	// beans per leaf task when populating in parallel
+	private static final int PARALLEL_BATCH_SIZE = 256;
 
-	private Stack<String> parentPropertes = new Stack<String>();
+	private final RandomSource randomSource;
 
-	// to prevent infinite recursion
-	private Stack<Class<?>> parentBeansTypesCreated = new Stack<Class<?>>();
+	private final PrimitiveGenerator primitiveProvider;
+	private final CollectionGenerator collectionProvider;
+	private final EnumGenerator enumProvider;
+	private final Perturber perturber;
 
-	private String parentPropertyPath;
-	
 	private final RandomOptions options;
 
+	// the population plan, resolved once per type and thrown away if the options change
+	private final ConcurrentMap<Class<?>, RandomGenerator<?>> generatorsByType = new ConcurrentHashMap<Class<?>, RandomGenerator<?>>();
+	private final ConcurrentMap<Class<?>, BeanPopulator> populators = new ConcurrentHashMap<Class<?>, BeanPopulator>();
+	private final ConcurrentMap<Class<?>, PropertyPath> rootPaths = new ConcurrentHashMap<Class<?>, PropertyPath>();
+	private volatile int planModCount;
+
+	// only set on the instance used to generate keyed beans, see #generateAt
+	private final ThreadLocal<KeyedRandom> keyedRandoms;
+	private volatile BeanRandom keyed;
+
+	// the instance parallel population runs through, and the randoms its leaf tasks reseed per bean, see #getSplit
+	private final ThreadLocal<ExtendedRandom> splitRandoms = new ThreadLocal<ExtendedRandom>() {
+		@Override
+		protected ExtendedRandom initialValue() {
+			return new ExtendedRandom();
+		}
+	};
+	private volatile BeanRandom split;
+
 	public BeanRandom() {
 		this(new RandomOptions());
 	}
 
-	public BeanRandom(RandomOptions options) {
+	public BeanRandom(final RandomOptions options) {
+		// looked up on every call so changes to the options' random source take effect
+		this(options, new RandomSource() {
+			@Override
+			public ExtendedRandom getRandom() {
+				return options.getRandom();
+			}
+		}, null);
+	}
+
+	/**
+	 * Create a bean random with the given options but its own source of randoms, so it can be driven independently of
+	 * other users of the same options
+	 */
+	private BeanRandom(RandomOptions options, RandomSource randomSource, ThreadLocal<KeyedRandom> keyedRandoms) {
 		extractor = new PropertiesExtractor(options);
 		this.options = options;
+		this.randomSource = randomSource;
+		this.keyedRandoms = keyedRandoms;
+		primitiveProvider = new PrimitiveGenerator(randomSource);
+		collectionProvider = new CollectionGenerator(this, randomSource);
+		enumProvider = new EnumGenerator(randomSource);
+		perturber = new Perturber(this, randomSource);
 	}
 	
 	public <T> T populate(Class<T> beanClass) {
-		BeanDefinition def = extractor.extractBeanDefWithCtor(beanClass);
-		if (def.getCtor() == null) {
-			throw new BeanException(
-			        "Could not find a valid ctor for bean class %s. Are you sure your bean ctor is public (or if you have no ctor that your bean is public) and the bean is not a non static inner class?",
-			        beanClass.getName());
+		BeanPopulator populator = getPopulator(beanClass);
+		return beanClass.cast(populator.populate(getRootPath(beanClass)));
+	}
 
-		}
-		T bean = populateCtor((Constructor<T>) def.getCtor());
-		populateProperties(bean);
+	/**
+	 * Re-randomize the given bean in place through its setters or fields, instead of creating a new one. Nested beans,
+	 * collections, maps and arrays already set are refilled rather than replaced where possible (arrays keep their
+	 * length), so a fixed pool of beans can be cycled without allocating new graphs. Properties only settable via the ctor
+	 * keep their values.
+	 *
+	 * @return the bean passed in
+	 */
+	public <T> T repopulate(T bean) {
+		Class<?> beanClass = bean.getClass();
+		getPopulator(beanClass).repopulate(getRootPath(beanClass), bean);
 		return bean;
 	}
 
-	private void populateProperties(Object bean) {
-		BeanDefinition def = extractor.extractBeanDef(bean.getClass());
-		populateProperties(def, bean);
+	/**
+	 * Create and populate the given number of beans
+	 */
+	public <T> List<T> populateMany(Class<T> beanClass, int n) {
+		final List<T> beans = new ArrayList<T>(n);
+		populateInto(beanClass, new BeanSink<T>() {
+			@Override
+			public void accept(T bean) {
+				beans.add(bean);
+			}
+		}, n);
+		return beans;
+	}
+
+	/**
+	 * Fill the given array with newly populated beans
+	 *
+	 * @return the array passed in
+	 */
+	public <T> T[] populateInto(Class<T> beanClass, final T[] into) {
+		populateInto(beanClass, new BeanSink<T>() {
+			private int i;
+
+			@Override
+			public void accept(T bean) {
+				into[i++] = bean;
+			}
+		}, into.length);
+		return into;
+	}
+
+	/**
+	 * Create and populate the given number of beans, passing each to the sink as soon as it is populated. The population
+	 * plan is resolved once for the whole run, not per bean
+	 */
+	public <T> void populateInto(Class<T> beanClass, BeanSink<? super T> sink, long n) {
+		BeanPopulator populator = getPopulator(beanClass);
+		PropertyPath root = getRootPath(beanClass);
+		Object[] args = populator.newArgs();
+		for (long i = 0; i < n; i++) {
+			sink.accept(beanClass.cast(populator.populate(root, args)));
+		}
+	}
+
+	/**
+	 * Create and populate the given number of beans in parallel on a shared fork join pool
+	 *
+	 * @see #populateParallel(Class, Object[], ForkJoinPool)
+	 */
+	public <T> List<T> populateManyParallel(Class<T> beanClass, int n) {
+		@SuppressWarnings("unchecked")
+		T[] beans = (T[]) new Object[n];
+		populateParallel(beanClass, beans, DefaultPool.POOL);
+		return Arrays.asList(beans);
+	}
+
+	/**
+	 * Fill the given array with newly populated beans in parallel on a shared fork join pool
+	 *
+	 * @see #populateParallel(Class, Object[], ForkJoinPool)
+	 */
+	public <T> T[] populateParallel(Class<T> beanClass, T[] into) {
+		return populateParallel(beanClass, into, DefaultPool.POOL);
+	}
+
+	/**
+	 * Fill the given array with newly populated beans, splitting the work across the given pool.
+	 *
+	 * <p>
+	 * Each bean is generated from its own random seeded from the call's seed and the bean's index, so the output is the
+	 * same whatever the pool's parallelism or how the work was scheduled. Each call takes the next seed of a series
+	 * derived from the options' seed (see {@link RandomOptions#seed(long)}), so repeated calls return different beans,
+	 * and the n-th call after seeding always returns the same ones. This only holds for the default
+	 * {@link ThreadLocalRandomSource}, with any other random source the call's seed is just the next long it returns, so
+	 * the output is only as repeatable as that source. All splits populate through one shared {@link BeanRandom}, so the population plan is resolved once, each
+	 * drawing from its worker thread's own random. While a split runs the options' random is routed to it too, so custom
+	 * providers drawing from {@link RandomOptions#getRandom()} are seeded per bean as well.
+	 * </p>
+	 *
+	 * @return the array passed in
+	 */
+	public <T> T[] populateParallel(Class<T> beanClass, T[] into, ForkJoinPool pool) {
+		pool.invoke(new PopulateTask<T>(beanClass, into, nextRunSeed(), 0, into.length));
+		return into;
+	}
+
+	/**
+	 * Generate the bean at the given index of the sequence of beans generated from the given seed, without generating the
+	 * beans before it. Every value is derived from the seed, the index and the path of the property, so any process can
+	 * regenerate any bean of the sequence on demand.
+	 *
+	 * <p>
+	 * The sequence is its own, it does not match the beans from {@link #populateParallel(Class, Object[])} for the same
+	 * seed. While the bean is generated {@link RandomOptions#getRandom()} returns the keyed random on the calling thread,
+	 * so custom providers registered in the options which draw from it are keyed too. Providers with their own source
+	 * of randomness are not.
+	 * </p>
+	 */
+	public <T> T generateAt(Class<T> beanClass, long seed, long index) {
+		BeanRandom keyedRandom = getKeyed();
+		KeyedRandom random = keyedRandom.getKeyedRandom();
+		random.setBase(ExtendedRandom.seedFor(seed, index));
+		ExtendedRandom previous = options.routeRandom(random);
+		try {
+			return keyedRandom.populate(beanClass);
+		} finally {
+			options.routeRandom(previous);
+		}
+	}
+
+	/**
+	 * Return a publisher of an endless sequence of beans, generated on the given executor as subscribers request them
+	 *
+	 * @see #publisher(Class, long, Executor)
+	 */
+	public <T> BeanFlow.Publisher<T> publisher(Class<T> beanClass, Executor executor) {
+		return publisher(beanClass, Long.MAX_VALUE, executor);
+	}
+
+	/**
+	 * Return a publisher of the given number of beans, generated on the given executor only as fast as each subscriber
+	 * requests them, so slow subscribers don't cause beans to pile up and fast ones aren't starved by a fixed size buffer.
+	 *
+	 * <p>
+	 * Every subscriber gets the same sequence, the beans at indexes 0 to count-1 of the keyed sequence (see
+	 * {@link #generateAt(Class, long, long)}) for the options' seed
+	 * </p>
+	 */
+	public <T> BeanFlow.Publisher<T> publisher(Class<T> beanClass, long count, Executor executor) {
+		return new GeneratingPublisher<T>(this, beanClass, getMasterSeed(), count, executor);
+	}
+
+	private BeanRandom getKeyed() {
+		if (keyedRandoms != null) {
+			return this;
+		}
+		BeanRandom k = keyed;
+		if (k == null) {
+			final ThreadLocal<KeyedRandom> randoms = new ThreadLocal<KeyedRandom>() {
+				@Override
+				protected KeyedRandom initialValue() {
+					return new KeyedRandom();
+				}
+			};
+			k = new BeanRandom(options, new RandomSource() {
+				@Override
+				public ExtendedRandom getRandom() {
+					return randoms.get();
+				}
+			}, randoms);
+			keyed = k;
+		}
+		return k;
+	}
+
+	/**
+	 * Return the instance parallel population runs through. Its randoms are per thread, reseeded by each leaf task before
+	 * every bean
+	 */
+	private BeanRandom getSplit() {
+		BeanRandom s = split;
+		if (s == null) {
+			s = new BeanRandom(options, new RandomSource() {
+				@Override
+				public ExtendedRandom getRandom() {
+					return splitRandoms.get();
+				}
+			}, null);
+			split = s;
+		}
+		return s;
+	}
+
+	boolean isKeyed() {
+		return keyedRandoms != null;
+	}
+
+	/**
+	 * The calling thread's keyed random, only valid if this is the keyed instance
+	 */
+	KeyedRandom getKeyedRandom() {
+		return keyedRandoms.get();
+	}
+
+	/**
+	 * The seed of the next parallel population, which derives each bean's random from it
+	 */
+	private long nextRunSeed() {
+		RandomSource source = options.getRandomSource();
+		if (source instanceof ThreadLocalRandomSource) {
+			return ((ThreadLocalRandomSource) source).nextRunSeed();
+		}
+		return options.getRandom().nextLong();
+	}
+
+	/**
+	 * The seed the options were seeded with, which publishers generate their keyed sequence from
+	 */
+	private long getMasterSeed() {
+		RandomSource source = options.getRandomSource();
+		if (source instanceof ThreadLocalRandomSource) {
+			return ((ThreadLocalRandomSource) source).getSeed();
+		}
+		return options.getRandom().nextLong();
+	}
+
+	private static class DefaultPool {
+		static final ForkJoinPool POOL = new ForkJoinPool();
+	}
+
+	private class PopulateTask<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Class<T> beanClass;
+		private final T[] into;
+		private final long seed;
+		private final int from;
+		private final int to;
+
+		PopulateTask(Class<T> beanClass, T[] into, long seed, int from, int to) {
+			this.beanClass = beanClass;
+			this.into = into;
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_BATCH_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new PopulateTask<T>(beanClass, into, seed, from, mid), new PopulateTask<T>(beanClass, into, seed, mid, to));
+				return;
+			}
+			BeanRandom split = getSplit();
+			BeanPopulator populator = split.getPopulator(beanClass);
+			PropertyPath root = split.getRootPath(beanClass);
+			Object[] args = populator.newArgs();
+			ExtendedRandom random = splitRandoms.get();
+			ExtendedRandom previous = options.routeRandom(random);
+			try {
+				for (int i = from; i < to; i++) {
+					random.setSeed(ExtendedRandom.seedFor(seed, i));
+					into[i] = beanClass.cast(populator.populate(root, args));
+				}
+			} finally {
+				options.routeRandom(previous);
+			}
+		}
+	}
+
+	private PropertyPath getRootPath(Class<?> beanClass) {
+		PropertyPath root = rootPaths.get(beanClass);
+		if (root == null) {
+			root = PropertyPath.root(beanClass, new HashSet<String>(options.getIgnoreProperties()));
+			PropertyPath existing = rootPaths.putIfAbsent(beanClass, root);
+			if (existing != null) {
+				root = existing;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Return the populator for the given bean class, building it on first use
+	 */
+	BeanPopulator getPopulator(Class<?> beanClass) {
+		checkPlanIsCurrent();
+		BeanPopulator populator = populators.get(beanClass);
+		if (populator == null) {
+			populator = new BeanPopulator(this, extractor.extractBeanDefWithCtor(beanClass));
+			BeanPopulator existing = populators.putIfAbsent(beanClass, populator);
+			if (existing != null) {
+				populator = existing;
+			}
+		}
+		return populator;
 	}
 
 	public void populateProperties(BeanDefinition def, Object bean) {
@@ -104,50 +437,14 @@ public class BeanRandom implements RandomGenerator {
 		}
 		// TODO:option to ignore errors?
 		try {
-			if (p.getWrite() != null) {
-				invokeMethod(bean, p.getWrite(), new Object[] { propertyValue }, p.isMakeAccessible());
-			} else if (p.getField() != null) {
-				setFieldValue(bean, p.getField(), propertyValue);
-			}
+			p.getAccessor().setValue(bean, propertyValue);
 		} catch (BeanException e) {
 			throw new BeanException("Error setting property '%s' on bean %s", e, p.getName(), bean.getClass().getName());
 		}
 	}
 
 	private boolean isGenerateRandomPropertyValue(Class<?> beanClass, String propertyName, Class<?> propertyType) {
-		if (parentPropertyPath != null) {
-			String fullPath = parentPropertyPath + propertyName;
-			if (options.getIgnoreProperties().contains(fullPath)) {
-				return false;
-			}
-		}
-
-		return true;
-	}
-
-	private void pushBeanProperty(String propertyName, Class<?> propertyType) {
-		parentBeansTypesCreated.add(propertyType);
-		parentPropertes.push(propertyName);
-		parentPropertyPath = joinParentProperties();
-	}
-
-	private void popBeanProperty() {
-		parentBeansTypesCreated.pop();
-		parentPropertes.pop();
-		parentPropertyPath = joinParentProperties();
-	}
-
-	private String joinParentProperties() {
-		if (parentPropertes.size() > 0) {
-			StringBuilder sb = new StringBuilder();
-			for (String name : parentPropertes) {
-				sb.append(name);
-				sb.append('.');
-			}
-			return sb.toString();
-		} else {
-			return "";
-		}
+		return !getRootPath(beanClass).isIgnored(propertyName);
 	}
 
 	public <T> T populateCtor(Constructor<T> ctor) {
@@ -168,6 +465,10 @@ public class BeanRandom implements RandomGenerator {
 		return args;
 	}
 	
+	/**
+	 * Return a value for the given property which doesn't equal the given one, derived from it in a single step where the
+	 * type allows (see {@link Perturber}). The given value is not modified
+	 */
 	public Object generateRandomNotEqualsTo(Object orgVal, Class<?> beanClass, PropertyDefinition p) {
 		return generateRandomNotEqualsTo(orgVal, beanClass, p.getName(), p.getType(), p.getGenericType());
 	}
@@ -177,66 +478,251 @@ public class BeanRandom implements RandomGenerator {
 	}
 	
 	private Object generateRandomNotEqualsTo(Object orgVal, Class<?> beanClass, String propertyName, Class<?> type, Type genericType) {
-		final int maxNumAttempts = 10;
-		for (int i = 0; i < maxNumAttempts; i++) {
-			Object newVal = generateRandom(beanClass, propertyName, type, genericType);
-			if (!newVal.equals(orgVal)) {
-				return newVal;
+		return perturber.perturb(orgVal, beanClass, propertyName, type, genericType);
+	}
+
+	/**
+	 * Return a copy of the given bean which doesn't equal it
+	 */
+	Object perturbBean(Object org) {
+		Class<?> beanClass = org.getClass();
+		return getPopulator(beanClass).perturb(getRootPath(beanClass), org, perturber);
+	}
+
+	/**
+	 * If values of the given type for the given property are generated by populating them as beans
+	 */
+	boolean isBeanType(Class<?> beanClass, String propertyName, Class<?> type, Type genericType) {
+		return resolveGenerator(beanClass, propertyName, type, genericType) instanceof NestedBeanGenerator;
+	}
+	/**
+	 * Cached plans capture the registered providers and failure options, so drop them if the options have changed
+	 */
+	private void checkPlanIsCurrent() {
+		if (planModCount != options.getModCount()) {
+			// only a concern if the options are modified while in use, and then only stale entries are cleared
+			generatorsByType.clear();
+			populators.clear();
+			rootPaths.clear();
+			planModCount = options.getModCount();
+		}
+	}
+
+	/**
+	 * Return the generator to use for values of the given type, resolving it on first use. This runs the full
+	 * resolution chain (custom providers, built in providers, collections, enums, primitives) once per type.
+	 * 
+	 * <p>
+	 * Types without a provider get a generator which decides per call whether to populate the value as a bean, see
+	 * {@link RandomOptions#isGeneratePropertyType(Object, String, Class, Type)}. Use
+	 * {@link #resolveGenerator(Class, String, Class, Type)} to make that decision once for a known property
+	 * </p>
+	 */
+	RandomGenerator<?> resolveGenerator(Class<?> propertyType) {
+		checkPlanIsCurrent();
+		RandomGenerator<?> generator = generatorsByType.get(propertyType);
+		if (generator == null) {
+			generator = createGenerator(propertyType);
+			RandomGenerator<?> existing = generatorsByType.putIfAbsent(propertyType, generator);
+			if (existing != null) {
+				generator = existing;
 			}
 		}
-		throw new BeanException(
-		        "Exceeded max number of attempts (%d) to generate different random value of type '%s', for value '%s'",
-		        maxNumAttempts, type.getName(), genericType, orgVal);
+		return generator;
 	}
-	@Override
-	public Object generateRandom(Class beanClass, String propertyName, Class propertyType, Type genericType) {
+
+	/**
+	 * Return the generator to use for the given property, with whether to populate it as a bean already decided. Used
+	 * when building plans, where the bean class and property are known
+	 *
+	 * @param propertyName null for ctor args
+	 */
+	RandomGenerator<?> resolveGenerator(Class<?> beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+		RandomGenerator<?> generator = resolveGenerator(propertyType);
+		if (generator instanceof BeanOrUnsupportedGenerator) {
+			return ((BeanOrUnsupportedGenerator) generator).select(beanClass, propertyName, propertyType, genericType);
+		}
+		return generator;
+	}
+
+	private RandomGenerator<?> createGenerator(Class<?> propertyType) {
+		RandomGenerator<?> provider = findProvider(propertyType);
+		if (provider != null) {
+			return provider;
+		}
+		//if no custom provider assume property is a bean and reflectively populate it, if the options allow
+		return new BeanOrUnsupportedGenerator(new NestedBeanGenerator(propertyType, options.isFailOnRecursiveBeanCreation()),
+		        new UnsupportedTypeGenerator(options.isFailOnNonSupportedPropertyType()));
+	}
+
+	private RandomGenerator<?> findProvider(Class<?> propertyType) {
 		RandomGenerator<?> provider = options.getProvider(propertyType);
 		//fall back to built in provider
+		if (provider == null && String.class == propertyType) {
+			provider = new StringGenerator(randomSource, options.getStringLength(), options.getStringAlphabet());
+		}
 		if (provider == null) {
 			provider = builtInProviders.get(propertyType);
 			if (provider == null) {
-				if (propertyType.isArray() || Collection.class.isAssignableFrom(propertyType)) {
+				if (propertyType.isArray() || Collection.class.isAssignableFrom(propertyType) || Map.class.isAssignableFrom(propertyType)) {
 					provider = collectionProvider;
 				} else if (propertyType.isEnum()) {
-					provider = enumProvider;
+					EnumDistribution distribution = options.getEnumDistribution(propertyType);
+					provider = distribution == null ? enumProvider : new EnumGenerator(randomSource, distribution);
 				} else if (primitiveProvider.supportsType(propertyType)) {
-					provider = primitiveProvider;
+					provider = primitiveProvider.getProvider(propertyType);
 				}
 			}
 		}
-		//if no custom provider assume property is a bean and reflectively populate it
-		if (provider == null) {
-			// lets create the bean
-			if (isGenerateBeanPropertyOfType(beanClass, propertyName, propertyType, genericType)) {
-				if (parentBeansTypesCreated.contains(propertyType)) {
-					if (options.isFailOnRecursiveBeanCreation()) {
-						throw new BeanException("Recursive bean creation for type %s for property %s",
-						        propertyType.getName(), propertyName);
-					} else {
-						return null;
-					}
-				}
-				try {
-					pushBeanProperty(propertyName, propertyType);
-					return populate(propertyType);
-				} finally {
-					popBeanProperty();
-				}
+		return provider;
+	}
+
+	@Override
+	public Object generateRandom(Class beanClass, String propertyName, Class propertyType, Type genericType) {
+		return resolveGenerator(propertyType).generateRandom(beanClass, propertyName, propertyType, genericType);
+	}
+
+	/**
+	 * Return how many elements to generate for the given collection property on the bean at the given path
+	 *
+	 * @param path the path of the bean owning the property, or null if the property is on a top level bean
+	 */
+	SizeDistribution getCollectionSize(PropertyPath path, String propertyName, Class<?> collectionType) {
+		if (propertyName != null && options.hasCollectionSizesByPath()) {
+			String fullPath = path == null ? propertyName : path.getPath() + propertyName;
+			SizeDistribution size = options.getCollectionSize(fullPath);
+			if (size != null) {
+				return size;
+			}
+		}
+		return options.getCollectionSize(collectionType);
+	}
+
+	public RandomOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Generates property values by populating a nested bean, guarding against infinite recursion
+	 */
+	@SuppressWarnings("rawtypes")
+	private class NestedBeanGenerator implements RandomGenerator<Object>, PathGenerator, InPlaceGenerator {
+
+		private final Class<?> beanType;
+		private final boolean failOnRecursion;
+		private volatile BeanPopulator populator;
+
+		NestedBeanGenerator(Class<?> beanType, boolean failOnRecursion) {
+			this.beanType = beanType;
+			this.failOnRecursion = failOnRecursion;
+		}
+
+		@Override
+		public Object generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			return generateRandom(null, beanClass, propertyName, propertyType, genericType);
+		}
+
+		@Override
+		public Object generateRandom(PropertyPath parentPath, Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			PropertyPath path;
+			if (parentPath != null) {
+				path = parentPath.child(propertyName, beanType);
+			} else if (beanClass != null) {
+				// called directly for a property of the given bean class
+				path = getRootPath(beanClass).child(propertyName, beanType);
 			} else {
-				if (options.isFailOnNonSupportedPropertyType()) {
-					throw new BeanException("no provider for type %s for property '%s'", propertyType, propertyName);
+				path = getRootPath(beanType);
+			}
+			if (path.isRecursive()) {
+				if (failOnRecursion) {
+					throw new BeanException("Recursive bean creation for type %s for property %s", beanType.getName(), propertyName);
 				}
 				return null;
 			}
+			return getBeanPopulator().populate(path);
+		}
+
+		@Override
+		public boolean regenerateInPlace(PropertyPath parentPath, Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object current) {
+			if (current.getClass() != beanType) {
+				// a subclass, whose extra properties the populator doesn't know about
+				return false;
+			}
+			PropertyPath path = parentPath.child(propertyName, beanType);
+			if (path.isRecursive()) {
+				return false;
+			}
+			getBeanPopulator().repopulate(path, current);
+			return true;
+		}
+
+		private BeanPopulator getBeanPopulator() {
+			BeanPopulator beanPopulator = populator;
+			if (beanPopulator == null) {
+				beanPopulator = getPopulator(beanType);
+				populator = beanPopulator;
+			}
+			return beanPopulator;
 		}
-		return provider.generateRandom(beanClass, propertyName, propertyType, genericType);
 	}
 
-	private boolean isGenerateBeanPropertyOfType(Object bean, String propertyName, Class<?> type, Type genericType) {
-		return options.isGeneratePropertyType(bean, propertyName, type, genericType);
+	/**
+	 * Generates values of a type without a provider, as a nested bean if the options allow it for the property being
+	 * generated, else as an unsupported type
+	 */
+	@SuppressWarnings("rawtypes")
+	private class BeanOrUnsupportedGenerator implements RandomGenerator<Object>, PathGenerator, InPlaceGenerator {
+
+		private final NestedBeanGenerator beanGenerator;
+		private final UnsupportedTypeGenerator unsupportedGenerator;
+
+		BeanOrUnsupportedGenerator(NestedBeanGenerator beanGenerator, UnsupportedTypeGenerator unsupportedGenerator) {
+			this.beanGenerator = beanGenerator;
+			this.unsupportedGenerator = unsupportedGenerator;
+		}
+
+		RandomGenerator<Object> select(Class<?> beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			if (options.isGeneratePropertyType(beanClass, propertyName, propertyType, genericType)) {
+				return beanGenerator;
+			}
+			return unsupportedGenerator;
+		}
+
+		@Override
+		public Object generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			return select(beanClass, propertyName, propertyType, genericType).generateRandom(beanClass, propertyName, propertyType, genericType);
+		}
+
+		@Override
+		public Object generateRandom(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			if (options.isGeneratePropertyType(beanClass, propertyName, propertyType, genericType)) {
+				return beanGenerator.generateRandom(path, beanClass, propertyName, propertyType, genericType);
+			}
+			return unsupportedGenerator.generateRandom(beanClass, propertyName, propertyType, genericType);
+		}
+
+		@Override
+		public boolean regenerateInPlace(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object current) {
+			return options.isGeneratePropertyType(beanClass, propertyName, propertyType, genericType)
+			        && beanGenerator.regenerateInPlace(path, beanClass, propertyName, propertyType, genericType, current);
+		}
 	}
 
-	public RandomOptions getOptions() {
-		return options;
+	@SuppressWarnings("rawtypes")
+	private static class UnsupportedTypeGenerator implements RandomGenerator<Object> {
+
+		private final boolean failOnNonSupportedType;
+
+		UnsupportedTypeGenerator(boolean failOnNonSupportedType) {
+			this.failOnNonSupportedType = failOnNonSupportedType;
+		}
+
+		@Override
+		public Object generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+			if (failOnNonSupportedType) {
+				throw new BeanException("no provider for type %s for property '%s'", propertyType, propertyName);
+			}
+			return null;
+		}
 	}
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.reflect.Type;
+
+/**
+ * A generator which can fill a whole batch of values in one call, used when generating large collections and arrays to
+ * avoid a dispatch (and random lookup) per element
+ */
+public interface BulkGenerator<T> extends RandomGenerator<T> {
+	@SuppressWarnings("rawtypes")
+	public void generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object[] into);
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.codemucker.jtest.bean.BeanException;
+
+/**
+ * The built in {@link CollectionFactory}s. Covers the common collection and map interfaces (mapped to a sensible
+ * implementation) and the JDK implementations, creating them pre-sized where the type supports it.
+ *
+ * <p>
+ * Other concrete collection types are created via their public no arg ctor, looked up once per type
+ * </p>
+ */
+public final class CollectionFactories {
+
+	private static final Map<Class<?>, CollectionFactory<?>> BUILT_IN = new HashMap<Class<?>, CollectionFactory<?>>();
+
+	private static final MethodType NO_ARG_CTOR_TYPE = MethodType.methodType(Object.class);
+
+	private static final ClassValue<CollectionFactory<?>> BY_TYPE = new ClassValue<CollectionFactory<?>>() {
+		@Override
+		protected CollectionFactory<?> computeValue(Class<?> type) {
+			CollectionFactory<?> factory = BUILT_IN.get(type);
+			if (factory == null) {
+				factory = newNoArgFactory(type);
+			}
+			return factory;
+		}
+	};
+
+	static {
+		CollectionFactory<ArrayList<?>> arrayList = new CollectionFactory<ArrayList<?>>() {
+			@Override
+			public ArrayList<?> newInstance(Class<?> elementType, int size) {
+				return new ArrayList<Object>(size);
+			}
+		};
+		register(arrayList, ArrayList.class, Collection.class, List.class);
+		register(new CollectionFactory<HashSet<?>>() {
+			@Override
+			public HashSet<?> newInstance(Class<?> elementType, int size) {
+				return new HashSet<Object>(capacityFor(size));
+			}
+		}, HashSet.class, Set.class);
+		register(new CollectionFactory<LinkedHashSet<?>>() {
+			@Override
+			public LinkedHashSet<?> newInstance(Class<?> elementType, int size) {
+				return new LinkedHashSet<Object>(capacityFor(size));
+			}
+		}, LinkedHashSet.class);
+		register(new CollectionFactory<TreeSet<?>>() {
+			@Override
+			public TreeSet<?> newInstance(Class<?> elementType, int size) {
+				return new TreeSet<Object>();
+			}
+		}, TreeSet.class, SortedSet.class, NavigableSet.class);
+		register(new CollectionFactory<EnumSet<?>>() {
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public EnumSet<?> newInstance(Class<?> elementType, int size) {
+				// the enum type is only known at runtime
+				return EnumSet.noneOf((Class) elementType);
+			}
+		}, EnumSet.class);
+		register(new CollectionFactory<LinkedList<?>>() {
+			@Override
+			public LinkedList<?> newInstance(Class<?> elementType, int size) {
+				return new LinkedList<Object>();
+			}
+		}, LinkedList.class);
+		register(new CollectionFactory<Vector<?>>() {
+			@Override
+			public Vector<?> newInstance(Class<?> elementType, int size) {
+				return new Vector<Object>(size);
+			}
+		}, Vector.class);
+		register(new CollectionFactory<ArrayDeque<?>>() {
+			@Override
+			public ArrayDeque<?> newInstance(Class<?> elementType, int size) {
+				return new ArrayDeque<Object>(size);
+			}
+		}, ArrayDeque.class, Queue.class, Deque.class);
+		register(new CollectionFactory<PriorityQueue<?>>() {
+			@Override
+			public PriorityQueue<?> newInstance(Class<?> elementType, int size) {
+				return new PriorityQueue<Object>(Math.max(1, size));
+			}
+		}, PriorityQueue.class);
+		register(new CollectionFactory<CopyOnWriteArrayList<?>>() {
+			@Override
+			public CopyOnWriteArrayList<?> newInstance(Class<?> elementType, int size) {
+				return new CopyOnWriteArrayList<Object>();
+			}
+		}, CopyOnWriteArrayList.class);
+		register(new CollectionFactory<CopyOnWriteArraySet<?>>() {
+			@Override
+			public CopyOnWriteArraySet<?> newInstance(Class<?> elementType, int size) {
+				return new CopyOnWriteArraySet<Object>();
+			}
+		}, CopyOnWriteArraySet.class);
+		register(new CollectionFactory<ConcurrentLinkedQueue<?>>() {
+			@Override
+			public ConcurrentLinkedQueue<?> newInstance(Class<?> elementType, int size) {
+				return new ConcurrentLinkedQueue<Object>();
+			}
+		}, ConcurrentLinkedQueue.class);
+		register(new CollectionFactory<ConcurrentLinkedDeque<?>>() {
+			@Override
+			public ConcurrentLinkedDeque<?> newInstance(Class<?> elementType, int size) {
+				return new ConcurrentLinkedDeque<Object>();
+			}
+		}, ConcurrentLinkedDeque.class);
+		register(new CollectionFactory<ConcurrentSkipListSet<?>>() {
+			@Override
+			public ConcurrentSkipListSet<?> newInstance(Class<?> elementType, int size) {
+				return new ConcurrentSkipListSet<Object>();
+			}
+		}, ConcurrentSkipListSet.class);
+		register(new CollectionFactory<LinkedBlockingQueue<?>>() {
+			@Override
+			public LinkedBlockingQueue<?> newInstance(Class<?> elementType, int size) {
+				return new LinkedBlockingQueue<Object>();
+			}
+		}, LinkedBlockingQueue.class, BlockingQueue.class);
+		register(new CollectionFactory<LinkedBlockingDeque<?>>() {
+			@Override
+			public LinkedBlockingDeque<?> newInstance(Class<?> elementType, int size) {
+				return new LinkedBlockingDeque<Object>();
+			}
+		}, LinkedBlockingDeque.class, BlockingDeque.class);
+		register(new CollectionFactory<ArrayBlockingQueue<?>>() {
+			@Override
+			public ArrayBlockingQueue<?> newInstance(Class<?> elementType, int size) {
+				return new ArrayBlockingQueue<Object>(Math.max(1, size));
+			}
+		}, ArrayBlockingQueue.class);
+
+		register(new CollectionFactory<HashMap<?, ?>>() {
+			@Override
+			public HashMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new HashMap<Object, Object>(capacityFor(size));
+			}
+		}, HashMap.class, Map.class, AbstractMap.class);
+		register(new CollectionFactory<LinkedHashMap<?, ?>>() {
+			@Override
+			public LinkedHashMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new LinkedHashMap<Object, Object>(capacityFor(size));
+			}
+		}, LinkedHashMap.class);
+		register(new CollectionFactory<TreeMap<?, ?>>() {
+			@Override
+			public TreeMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new TreeMap<Object, Object>();
+			}
+		}, TreeMap.class, SortedMap.class, NavigableMap.class);
+		register(new CollectionFactory<Hashtable<?, ?>>() {
+			@Override
+			public Hashtable<?, ?> newInstance(Class<?> keyType, int size) {
+				return new Hashtable<Object, Object>(capacityFor(size));
+			}
+		}, Hashtable.class);
+		register(new CollectionFactory<IdentityHashMap<?, ?>>() {
+			@Override
+			public IdentityHashMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new IdentityHashMap<Object, Object>(size);
+			}
+		}, IdentityHashMap.class);
+		register(new CollectionFactory<WeakHashMap<?, ?>>() {
+			@Override
+			public WeakHashMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new WeakHashMap<Object, Object>(capacityFor(size));
+			}
+		}, WeakHashMap.class);
+		register(new CollectionFactory<EnumMap<?, ?>>() {
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public EnumMap<?, ?> newInstance(Class<?> keyType, int size) {
+				// the enum type is only known at runtime
+				return new EnumMap(keyType);
+			}
+		}, EnumMap.class);
+		register(new CollectionFactory<ConcurrentHashMap<?, ?>>() {
+			@Override
+			public ConcurrentHashMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new ConcurrentHashMap<Object, Object>(capacityFor(size));
+			}
+		}, ConcurrentHashMap.class, ConcurrentMap.class);
+		register(new CollectionFactory<ConcurrentSkipListMap<?, ?>>() {
+			@Override
+			public ConcurrentSkipListMap<?, ?> newInstance(Class<?> keyType, int size) {
+				return new ConcurrentSkipListMap<Object, Object>();
+			}
+		}, ConcurrentSkipListMap.class, ConcurrentNavigableMap.class);
+	}
+
+	private CollectionFactories() {
+		// static only
+	}
+
+	private static void register(CollectionFactory<?> factory, Class<?>... types) {
+		for (Class<?> type : types) {
+			BUILT_IN.put(type, factory);
+		}
+	}
+
+	/**
+	 * Return the factory for the given collection or map type
+	 *
+	 * @throws BeanException if there is no built in factory for the type and it has no public no arg ctor
+	 */
+	public static CollectionFactory<?> get(Class<?> type) {
+		return BY_TYPE.get(type);
+	}
+
+	/**
+	 * The initial capacity a hash based collection needs to hold the given number of elements without rehashing
+	 */
+	static int capacityFor(int size) {
+		return (int) (size / 0.75f) + 1;
+	}
+
+	private static CollectionFactory<?> newNoArgFactory(final Class<?> type) {
+		if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+			throw new BeanException("Don't know how to create collection of type %s", type.getName());
+		}
+		final MethodHandle ctor;
+		try {
+			ctor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class)).asType(NO_ARG_CTOR_TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new BeanException("Don't know how to create collection of type %s", e, type.getName());
+		} catch (IllegalAccessException e) {
+			throw new BeanException("Don't know how to create collection of type %s", e, type.getName());
+		}
+		return new CollectionFactory<Object>() {
+			@Override
+			public Object newInstance(Class<?> elementType, int size) {
+				try {
+					return (Object) ctor.invokeExact();
+				} catch (Throwable t) {
+					throw new BeanException("Error creating collection of type %s", t, type.getName());
+				}
+			}
+		};
+	}
+}
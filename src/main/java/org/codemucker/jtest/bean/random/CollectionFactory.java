@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+/**
+ * Creates empty collections or maps of a given type, sized to hold the number of elements about to be added
+ *
+ * @param <T> the collection or map type created
+ */
+public interface CollectionFactory<T> {
+
+	/**
+	 * @param elementType the collection element type, or for maps the key type
+	 * @param size the number of elements which will be added
+	 */
+	T newInstance(Class<?> elementType, int size);
+}
@@ -16,39 +16,75 @@
 package org.codemucker.jtest.bean.random;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 
 import org.codemucker.jtest.bean.BeanException;
 
 
-public class CollectionGenerator implements RandomGenerator {
+public class CollectionGenerator implements RandomGenerator, PathGenerator, InPlaceGenerator {
 
-	private final Random RANDOM = new Random();
+	public static final SizeDistribution DEFAULT_SIZE = SizeDistribution.uniform(1, 10);
+
+	// most elements generated at a time when filling collections and maps, bounding the extra memory used for large ones
+	private static final int FILL_BATCH_SIZE = 1024;
 
 	private final RandomGenerator<?> provider;
+	private final RandomSource randomSource;
 
 	public CollectionGenerator(RandomGenerator<?> provider) {
+		this(provider, new ThreadLocalRandomSource());
+	}
+
+	public CollectionGenerator(RandomGenerator<?> provider, RandomSource randomSource) {
 		this.provider = provider;
+		this.randomSource = randomSource;
 	}
 
 	@Override
 	public Object generateRandom(Class beanClass, String propertyName, Class propertyType, Type genericType) {
+		return generateRandom(null, beanClass, propertyName, propertyType, genericType);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Object generateRandom(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
 		try {
 			if (propertyType.isArray()) {
-				int randomLen = randomLen();
-				Object[] array = (Object[]) Array.newInstance(propertyType.getComponentType(), randomLen);
-				fillArray(beanClass, propertyName, array, propertyType.getComponentType());
+				int randomLen = randomLen(path, propertyName, propertyType);
+				Class<?> componentType = propertyType.getComponentType();
+				if (componentType.isPrimitive()) {
+					return generatePrimitiveArray(componentType, randomLen);
+				}
+				Object[] array = (Object[]) Array.newInstance(componentType, randomLen);
+				generateElements(path, beanClass, propertyName, componentType, componentGenericType(genericType, componentType), array);
 				return array;
+			} else if (Map.class.isAssignableFrom(propertyType)) {
+				Type keyGenericType = extractTypeArg(genericType, 0, 2);
+				Type valueGenericType = extractTypeArg(genericType, 1, 2);
+				Class<?> keyType = rawType(keyGenericType);
+				Class<?> valueType = rawType(valueGenericType);
+				if (keyType == null || valueType == null) {
+					throw new BeanException("Can't create map entries using non concrete types:" + genericType);
+				}
+				int randomLen = randomLen(path, propertyName, propertyType);
+				Map<Object, Object> map = asObjectMap(getFactory(propertyType).newInstance(keyType, randomLen));
+				fillMap(path, beanClass, propertyName, map, keyType, keyGenericType, valueType, valueGenericType, randomLen);
+				return map;
 			} else {
-				Collection<?> col = createCollectionOfType(propertyType);
-				fillCollection(beanClass, propertyName, col, genericType);
+				Type elementGenericType = extractTypeArg(genericType, 0, 1);
+				Class<?> elementType = rawType(elementGenericType);
+				if (elementType == null) {
+					throw new BeanException("Can't create collection elements using non concrete type:" + genericType);
+				}
+				int randomLen = randomLen(path, propertyName, propertyType);
+				Collection<Object> col = asObjectCollection(getFactory(propertyType).newInstance(elementType, randomLen));
+				fillCollection(path, beanClass, propertyName, col, elementType, elementGenericType, randomLen);
 				return col;
 			}
 		} catch (BeanException e) {
@@ -57,64 +93,357 @@ public class CollectionGenerator implements RandomGenerator {
 		}
 	}
 	
-	private Collection<?> createCollectionOfType(Class propertyType) {
-		if (Collection.class.equals(propertyType)) {
-			return new ArrayList();
-		}
-		if (List.class.equals(propertyType)) {
-			return new ArrayList();
-		}
-		if (Set.class.equals(propertyType)) {
-			return new HashSet();
+	/**
+	 * Refill the given collection or map to a new random size, or refill the given array keeping its length. Elements
+	 * which can themselves be regenerated in place, such as beans, are repopulated and kept, new ones are only created
+	 * when there are more elements than before
+	 */
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean regenerateInPlace(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object current) {
+		try {
+			if (current.getClass().isArray()) {
+				Class<?> componentType = current.getClass().getComponentType();
+				if (componentType.isPrimitive()) {
+					fillPrimitiveArray(current);
+				} else {
+					Object[] array = (Object[]) current;
+					regenerateElements(path, beanClass, propertyName, componentType, componentGenericType(genericType, componentType), array, array.length);
+				}
+				return true;
+			} else if (current instanceof Map) {
+				Type keyGenericType = extractTypeArg(genericType, 0, 2);
+				Type valueGenericType = extractTypeArg(genericType, 1, 2);
+				Class<?> keyType = rawType(keyGenericType);
+				Class<?> valueType = rawType(valueGenericType);
+				if (keyType == null || valueType == null) {
+					return false;
+				}
+				Map<Object, Object> map = asObjectMap(current);
+				int randomLen = randomLen(path, propertyName, propertyType);
+				if (!isInPlace(beanClass, propertyName, keyType, keyGenericType) && !isInPlace(beanClass, propertyName, valueType, valueGenericType)) {
+					map.clear();
+					fillMap(path, beanClass, propertyName, map, keyType, keyGenericType, valueType, valueGenericType, randomLen);
+					return true;
+				}
+				int existing = Math.min(map.size(), randomLen);
+				// keys and values iterate in the same order
+				Object[] keys = Arrays.copyOf(map.keySet().toArray(), randomLen);
+				Object[] values = Arrays.copyOf(map.values().toArray(), randomLen);
+				// keys change hash once regenerated, so all are re-added
+				map.clear();
+				regenerateElements(path, beanClass, propertyName, keyType, keyGenericType, keys, existing);
+				regenerateElements(path, beanClass, propertyName, valueType, valueGenericType, values, existing);
+				for (int i = 0; i < randomLen; i++) {
+					map.put(keys[i], values[i]);
+				}
+				return true;
+			} else if (current instanceof Collection) {
+				Type elementGenericType = extractTypeArg(genericType, 0, 1);
+				Class<?> elementType = rawType(elementGenericType);
+				if (elementType == null) {
+					return false;
+				}
+				Collection<Object> col = asObjectCollection(current);
+				int randomLen = randomLen(path, propertyName, propertyType);
+				if (col instanceof BlockingQueue && col.size() + (long) ((BlockingQueue<?>) col).remainingCapacity() < randomLen) {
+					// a bounded queue sized for its first fill, replace it with one big enough
+					return false;
+				}
+				if (!isInPlace(beanClass, propertyName, elementType, elementGenericType)) {
+					col.clear();
+					fillCollection(path, beanClass, propertyName, col, elementType, elementGenericType, randomLen);
+					return true;
+				}
+				int existing = Math.min(col.size(), randomLen);
+				Object[] elements = Arrays.copyOf(col.toArray(), randomLen);
+				// sets would lose track of elements whose hash changes, so all are re-added
+				col.clear();
+				regenerateElements(path, beanClass, propertyName, elementType, elementGenericType, elements, existing);
+				for (Object element : elements) {
+					col.add(element);
+				}
+				return true;
+			}
+		} catch (UnsupportedOperationException e) {
+			// unmodifiable, replace it
 		}
-		if (Collection.class.isAssignableFrom(propertyType)) {
-			try {
-				Collection col = (Collection) propertyType.newInstance();
-				return col;
-			} catch (InstantiationException e) {
-				throw new BeanException("Don't know how to create collection of type %s", e, propertyType.getName());
-			} catch (IllegalAccessException e) {
-				throw new BeanException("Don't know how to create collection of type %s", e, propertyType.getName());
+		return false;
+	}
+
+	/**
+	 * Return the factory for the given collection or map type, preferring any registered via
+	 * {@link RandomOptions#addCollectionFactory(Class, CollectionFactory)}
+	 */
+	private CollectionFactory<?> getFactory(Class<?> type) {
+		if (provider instanceof BeanRandom) {
+			CollectionFactory<?> factory = ((BeanRandom) provider).getOptions().getCollectionFactory(type);
+			if (factory != null) {
+				return factory;
 			}
-		} else {
-			throw new BeanException("Don't know how to create collection of type %s", propertyType.getName());
 		}
+		return CollectionFactories.get(type);
 	}
 
 	public <T extends Collection> void fillCollection(Class beanClass, String propertyName, T col, Type genericType) {
-		Class<?> elementType = extractConcreteType(genericType);
+		Type elementGenericType = extractTypeArg(genericType, 0, 1);
+		Class<?> elementType = rawType(elementGenericType);
 		if (elementType == null) {
 			throw new BeanException("Can't create collection elements using non concrete type:" + genericType);
 		}
-		int randomLen = randomLen();
-		for (int i = 0; i < randomLen; i++) {
-			Object eleVal = provider.generateRandom(beanClass, propertyName, elementType, null);
-			col.add(eleVal);
+		fillCollection(null, beanClass, propertyName, asObjectCollection(col), elementType, elementGenericType, randomLen(null, propertyName, col.getClass()));
+	}
+
+	/**
+	 * Add the given number of generated elements to the collection, in batches so only a batch is held outside it
+	 */
+	private void fillCollection(PropertyPath path, Class<?> beanClass, String propertyName, Collection<Object> col, Class<?> elementType,
+	        Type elementGenericType, int randomLen) {
+		Object[] batch = null;
+		for (int added = 0; added < randomLen; added += FILL_BATCH_SIZE) {
+			batch = batch(batch, randomLen - added);
+			generateElements(path, beanClass, propertyName, elementType, elementGenericType, batch);
+			for (Object element : batch) {
+				col.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Add the given number of generated entries to the map
+	 */
+	public void fillMap(Class<?> beanClass, String propertyName, Map<?, ?> map, Class<?> keyType, Class<?> valueType, int randomLen) {
+		fillMap(null, beanClass, propertyName, asObjectMap(map), keyType, keyType, valueType, valueType, randomLen);
+	}
+
+	private void fillMap(PropertyPath path, Class<?> beanClass, String propertyName, Map<Object, Object> map, Class<?> keyType, Type keyGenericType,
+	        Class<?> valueType, Type valueGenericType, int randomLen) {
+		Object[] keys = null;
+		Object[] values = null;
+		for (int added = 0; added < randomLen; added += FILL_BATCH_SIZE) {
+			keys = batch(keys, randomLen - added);
+			values = batch(values, randomLen - added);
+			generateElements(path, beanClass, propertyName, keyType, keyGenericType, keys);
+			generateElements(path, beanClass, propertyName, valueType, valueGenericType, values);
+			for (int i = 0; i < keys.length; i++) {
+				map.put(keys[i], values[i]);
+			}
 		}
 	}
 
+	/**
+	 * View a collection of unknown element type as one the generated elements can be added to. The element type is
+	 * only known at runtime, from the property's generic type
+	 */
+	@SuppressWarnings("unchecked")
+	private static Collection<Object> asObjectCollection(Object col) {
+		return (Collection<Object>) col;
+	}
+
+	/**
+	 * View a map of unknown key and value types as one the generated entries can be put in
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<Object, Object> asObjectMap(Object map) {
+		return (Map<Object, Object>) map;
+	}
+
+	/**
+	 * Return a buffer for the next batch of at most the given number of elements, reusing the previous one if the same
+	 * size
+	 */
+	private static Object[] batch(Object[] previous, int remaining) {
+		int len = Math.min(remaining, FILL_BATCH_SIZE);
+		return previous != null && previous.length == len ? previous : new Object[len];
+	}
+
 	public void fillArray(Class beanClass, String propertyName, Object[] arr, Class<?> elementType) {
-		for (int i = 0; i < arr.length; i++) {
-			Object eleVal = provider.generateRandom(beanClass, propertyName, elementType, null);
-			arr[i] = eleVal;
+		generateElements(null, beanClass, propertyName, elementType, elementType, arr);
+	}
+
+	/**
+	 * Fill the given array with generated elements, in one call if the element generator supports bulk generation
+	 *
+	 * @param elementGenericType the full element type, so elements which are themselves collections or maps know their
+	 *            own element types
+	 */
+	private void generateElements(PropertyPath path, Class<?> beanClass, String propertyName, Class<?> elementType, Type elementGenericType,
+	        Object[] into) {
+		RandomGenerator<?> elementProvider = getElementProvider(beanClass, propertyName, elementType, elementGenericType);
+		if (elementProvider instanceof BulkGenerator) {
+			((BulkGenerator<?>) elementProvider).generateRandom(beanClass, propertyName, elementType, elementGenericType, into);
+		} else if (elementProvider instanceof PathGenerator) {
+			PathGenerator pathProvider = (PathGenerator) elementProvider;
+			for (int i = 0; i < into.length; i++) {
+				into[i] = pathProvider.generateRandom(path, beanClass, propertyName, elementType, elementGenericType);
+			}
+		} else {
+			for (int i = 0; i < into.length; i++) {
+				into[i] = elementProvider.generateRandom(beanClass, propertyName, elementType, elementGenericType);
+			}
+		}
+	}
+
+	/**
+	 * If elements of the given type are regenerated in place rather than replaced
+	 */
+	private boolean isInPlace(Class<?> beanClass, String propertyName, Class<?> elementType, Type elementGenericType) {
+		return getElementProvider(beanClass, propertyName, elementType, elementGenericType) instanceof InPlaceGenerator;
+	}
+
+	/**
+	 * Regenerate the first given number of elements in place where the element generator supports it, and generate the
+	 * rest, and any which couldn't be changed in place, anew
+	 *
+	 * @param existing the number of elements at the start of the array to try to keep
+	 */
+	private void regenerateElements(PropertyPath path, Class<?> beanClass, String propertyName, Class<?> elementType, Type elementGenericType,
+	        Object[] elements, int existing) {
+		RandomGenerator<?> elementProvider = getElementProvider(beanClass, propertyName, elementType, elementGenericType);
+		if (!(elementProvider instanceof InPlaceGenerator)) {
+			generateElements(path, beanClass, propertyName, elementType, elementGenericType, elements);
+			return;
+		}
+		InPlaceGenerator inPlace = (InPlaceGenerator) elementProvider;
+		for (int i = 0; i < elements.length; i++) {
+			Object current = i < existing ? elements[i] : null;
+			if (current == null || !inPlace.regenerateInPlace(path, beanClass, propertyName, elementType, elementGenericType, current)) {
+				elements[i] = elementProvider instanceof PathGenerator
+				        ? ((PathGenerator) elementProvider).generateRandom(path, beanClass, propertyName, elementType, elementGenericType)
+				        : elementProvider.generateRandom(beanClass, propertyName, elementType, elementGenericType);
+			}
+		}
+	}
+
+	/**
+	 * Create and fill a primitive array in bulk, with no per element boxing
+	 */
+	public Object generatePrimitiveArray(Class<?> componentType, int len) {
+		ExtendedRandom random = randomSource.getRandom();
+		if (componentType == Byte.TYPE) {
+			byte[] arr = new byte[len];
+			random.nextBytes(arr);
+			return arr;
+		}
+		if (componentType == Integer.TYPE) {
+			int[] arr = new int[len];
+			random.nextInts(arr);
+			return arr;
+		}
+		if (componentType == Long.TYPE) {
+			long[] arr = new long[len];
+			random.nextLongs(arr);
+			return arr;
+		}
+		if (componentType == Double.TYPE) {
+			double[] arr = new double[len];
+			random.nextDoubles(arr);
+			return arr;
+		}
+		if (componentType == Float.TYPE) {
+			float[] arr = new float[len];
+			random.nextFloats(arr);
+			return arr;
 		}
+		if (componentType == Short.TYPE) {
+			short[] arr = new short[len];
+			random.nextShorts(arr);
+			return arr;
+		}
+		if (componentType == Character.TYPE) {
+			char[] arr = new char[len];
+			random.nextChars(arr);
+			return arr;
+		}
+		if (componentType == Boolean.TYPE) {
+			boolean[] arr = new boolean[len];
+			random.nextBooleans(arr);
+			return arr;
+		}
+		throw new BeanException("Don't know how to create array of primitive type %s", componentType.getName());
+	}
+
+	/**
+	 * Refill the given primitive array in bulk
+	 */
+	private void fillPrimitiveArray(Object arr) {
+		ExtendedRandom random = randomSource.getRandom();
+		if (arr instanceof byte[]) {
+			random.nextBytes((byte[]) arr);
+		} else if (arr instanceof int[]) {
+			random.nextInts((int[]) arr);
+		} else if (arr instanceof long[]) {
+			random.nextLongs((long[]) arr);
+		} else if (arr instanceof double[]) {
+			random.nextDoubles((double[]) arr);
+		} else if (arr instanceof float[]) {
+			random.nextFloats((float[]) arr);
+		} else if (arr instanceof short[]) {
+			random.nextShorts((short[]) arr);
+		} else if (arr instanceof char[]) {
+			random.nextChars((char[]) arr);
+		} else {
+			random.nextBooleans((boolean[]) arr);
+		}
+	}
+
+	/**
+	 * Resolve the generator for the given element type up front, so filling doesn't go through the provider's type
+	 * lookup for every element
+	 */
+	private RandomGenerator<?> getElementProvider(Class<?> beanClass, String propertyName, Class<?> elementType, Type elementGenericType) {
+		if (provider instanceof BeanRandom) {
+			return ((BeanRandom) provider).resolveGenerator(beanClass, propertyName, elementType, elementGenericType);
+		}
+		return provider;
 	}
 
-	private Class<?> extractConcreteType(Type type) {
+	/**
+	 * Return the given type argument of a parameterized type, such as the element type of a List&lt;List&lt;String&gt;&gt;
+	 *
+	 * @return null if the type isn't parameterized with the given number of args
+	 */
+	private static Type extractTypeArg(Type type, int index, int numTypeArgs) {
 		if (type instanceof ParameterizedType) {
 			ParameterizedType pType = (ParameterizedType) type;
-			if (pType.getActualTypeArguments().length == 1) {
-				Type subType = pType.getActualTypeArguments()[0];
-				if (subType instanceof Class) {
-					return (Class) subType;
-				}
-
+			if (pType.getActualTypeArguments().length == numTypeArgs) {
+				return pType.getActualTypeArguments()[index];
 			}
 		}
 		return null;
 	}
 
-	private int randomLen() {
-		return 1 + RANDOM.nextInt(10);
+	/**
+	 * Return the class of a concrete type, or null for type variables and wildcards which can't be created
+	 */
+	private static Class<?> rawType(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		} else if (type instanceof ParameterizedType) {
+			return rawType(((ParameterizedType) type).getRawType());
+		}
+		return null;
+	}
+
+	/**
+	 * The full component type of an array, keeping the type args of arrays of collections such as List&lt;String&gt;[]
+	 */
+	private static Type componentGenericType(Type arrayGenericType, Class<?> componentType) {
+		if (arrayGenericType instanceof GenericArrayType) {
+			return ((GenericArrayType) arrayGenericType).getGenericComponentType();
+		}
+		return componentType;
+	}
+
+	/**
+	 * The number of elements to generate for the given collection, map or array property. When generating via a
+	 * {@link BeanRandom} this is taken from the sizes configured in its {@link RandomOptions}
+	 */
+	private int randomLen(PropertyPath path, String propertyName, Class<?> propertyType) {
+		SizeDistribution size = DEFAULT_SIZE;
+		if (provider instanceof BeanRandom) {
+			size = ((BeanRandom) provider).getCollectionSize(path, propertyName, propertyType);
+		}
+		return size.nextSize(randomSource.getRandom());
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
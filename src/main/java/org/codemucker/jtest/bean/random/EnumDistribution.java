@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decides which constant of an enum to pick, by index into the enum's constants
+ */
+public abstract class EnumDistribution {
+
+	private static final EnumDistribution UNIFORM = new EnumDistribution() {
+		@Override
+		public int nextIndex(Random random, int numConstants) {
+			return random.nextInt(numConstants);
+		}
+
+		@Override
+		public String toString() {
+			return "uniform";
+		}
+	};
+
+	/**
+	 * Return the index of the next constant to pick
+	 *
+	 * @param numConstants the number of constants in the enum, always at least one
+	 */
+	public abstract int nextIndex(Random random, int numConstants);
+
+	/**
+	 * Every constant equally likely
+	 */
+	public static EnumDistribution uniform() {
+		return UNIFORM;
+	}
+
+	/**
+	 * Pick constants in proportion to the given weights, in declaration order. Constants beyond the last weight are never
+	 * picked
+	 */
+	public static EnumDistribution weighted(double... weights) {
+		if (weights.length == 0) {
+			throw new IllegalArgumentException("need at least one weight");
+		}
+		final double[] cumulative = new double[weights.length];
+		double total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] < 0 || Double.isNaN(weights[i])) {
+				throw new IllegalArgumentException("weights must not be negative, but was " + weights[i]);
+			}
+			total += weights[i];
+			cumulative[i] = total;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("at least one weight must be positive");
+		}
+		return new Weighted(cumulative, "weighted" + Arrays.toString(weights));
+	}
+
+	/**
+	 * Zipf like skew towards the first declared constants. The constant at index i is picked in proportion to
+	 * 1/(i+1)^exponent, so an exponent of 0 is uniform and the larger the exponent the more the first constants dominate
+	 */
+	public static EnumDistribution skewed(final double exponent) {
+		if (exponent < 0 || Double.isNaN(exponent)) {
+			throw new IllegalArgumentException("exponent must not be negative, but was " + exponent);
+		}
+		return new EnumDistribution() {
+			// the same distribution may be shared by enums with different numbers of constants
+			private volatile Weighted weighted;
+
+			@Override
+			public int nextIndex(Random random, int numConstants) {
+				Weighted dist = weighted;
+				if (dist == null || dist.cumulative.length != numConstants) {
+					double[] weights = new double[numConstants];
+					for (int i = 0; i < numConstants; i++) {
+						// StrictMath, so seeded picks are the same on every JVM
+						weights[i] = 1 / StrictMath.pow(i + 1, exponent);
+					}
+					dist = (Weighted) weighted(weights);
+					weighted = dist;
+				}
+				return dist.nextIndex(random, numConstants);
+			}
+
+			@Override
+			public String toString() {
+				return "skewed(" + exponent + ")";
+			}
+		};
+	}
+
+	private static class Weighted extends EnumDistribution {
+		private final double[] cumulative;
+		private final String desc;
+
+		Weighted(double[] cumulative, String desc) {
+			this.cumulative = cumulative;
+			this.desc = desc;
+		}
+
+		@Override
+		public int nextIndex(Random random, int numConstants) {
+			int max = Math.min(numConstants, cumulative.length);
+			double target = random.nextDouble() * cumulative[max - 1];
+			int idx = Arrays.binarySearch(cumulative, 0, max, target);
+			// either an exact hit on a boundary, which belongs to the next bucket, or the insertion point
+			idx = idx >= 0 ? idx + 1 : -(idx + 1);
+			return Math.min(idx, max - 1);
+		}
+
+		@Override
+		public String toString() {
+			return desc;
+		}
+	}
+}
@@ -16,23 +16,63 @@
 package org.codemucker.jtest.bean.random;
 
 import java.lang.reflect.Type;
-import java.util.Random;
 
 import org.codemucker.jtest.bean.BeanException;
 
 
-public class EnumGenerator implements RandomGenerator {
+public class EnumGenerator implements BulkGenerator<Object> {
 
-	private final Random RANDOM = new Random();
+	/**
+	 * Enum constants per enum type. {@link Class#getEnumConstants()} clones the array on every call
+	 */
+	private static final ClassValue<Object[]> CONSTANTS = new ClassValue<Object[]>() {
+		@Override
+		protected Object[] computeValue(Class<?> type) {
+			return type.getEnumConstants();
+		}
+	};
+
+	private final RandomSource randomSource;
+	private final EnumDistribution distribution;
+
+	public EnumGenerator() {
+		this(new ThreadLocalRandomSource());
+	}
+
+	public EnumGenerator(RandomSource randomSource) {
+		this(randomSource, EnumDistribution.uniform());
+	}
+
+	public EnumGenerator(RandomSource randomSource, EnumDistribution distribution) {
+		this.randomSource = randomSource;
+		this.distribution = distribution;
+	}
 
 	@Override
-	public Object generateRandom(Class bean, String propertyName, Class propertyType, Type genericType) {
-		if (propertyType.isEnum()) {
-			Object[] enums = propertyType.getEnumConstants();
-			int idx = RANDOM.nextInt(enums.length);
-			return enums[idx];
+	@SuppressWarnings("rawtypes")
+	public Object generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
+		Object[] enums = getConstants(propertyName, propertyType);
+		return enums[distribution.nextIndex(randomSource.getRandom(), enums.length)];
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+		Object[] enums = getConstants(propertyName, propertyType);
+		ExtendedRandom random = randomSource.getRandom();
+		for (int i = 0; i < into.length; i++) {
+			into[i] = enums[distribution.nextIndex(random, enums.length)];
 		}
+	}
 
+	private static Object[] getConstants(String propertyName, Class<?> propertyType) {
+		if (propertyType.isEnum()) {
+			Object[] enums = CONSTANTS.get(propertyType);
+			if (enums.length > 0) {
+				return enums;
+			}
+			throw new BeanException("Property '%s' of enum type %s has no constants", propertyName, propertyType.getName());
+		}
 		throw new BeanException("Property '%s' of type %s is not an enum", propertyName, propertyType.getName());
 	}
-}
\ No newline at end of file
+}
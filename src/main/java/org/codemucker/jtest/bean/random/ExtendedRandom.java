@@ -19,28 +19,268 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Random;
 
-class ExtendedRandom extends Random {
-char nextChar() {
-    return (char) next(16);
-}
+/**
+ * A fast, seedable random using the xoroshiro128+ algorithm, seeded via SplitMix64.
+ *
+ * <p>
+ * Unlike {@link Random} this does not update a shared atomic seed on every call, so it is <em>not</em> thread safe. Each
+ * thread should use its own instance, see {@link RandomSource} and {@link #split()}.
+ * </p>
+ */
+public class ExtendedRandom extends Random {
 
-byte nextByte() {
-    return (byte) next(8);
-}
+	private static final long serialVersionUID = 1L;
 
-short nextShort() {
-    return (short) next(16);
-}
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+	private static final float FLOAT_UNIT = 0x1.0p-24f;
 
-BigDecimal nextBigDecimal() {
-    int scale = nextInt();
-    return new BigDecimal(nextBigInteger(), scale);
-}
+	// no field initialisers, the super ctor calls setSeed before they would run
+	private long s0;
+	private long s1;
+
+	public ExtendedRandom() {
+		super();
+	}
+
+	public ExtendedRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+		reseed(seed);
+	}
+
+	/**
+	 * Restart the sequence from the given seed. Same as {@link #setSeed(long)} but without the synchronisation of the
+	 * superclass, for callers reseeding very often
+	 */
+	public void reseed(long seed) {
+		long z = seed;
+		s0 = mix64(z += GOLDEN_GAMMA);
+		s1 = mix64(z += GOLDEN_GAMMA);
+		if (s0 == 0 && s1 == 0) {
+			s1 = GOLDEN_GAMMA;
+		}
+	}
+
+	/**
+	 * Create a new independent random seeded from this one. Splitting the same seeded random in the same order always
+	 * produces the same sequence of randoms
+	 */
+	public ExtendedRandom split() {
+		return new ExtendedRandom(nextLong());
+	}
+
+	/**
+	 * Derive the seed for the item at the given index of a seeded sequence. Neighbouring indexes give unrelated seeds, so
+	 * each item can be generated from its own random independent of the others
+	 */
+	public static long seedFor(long seed, long index) {
+		return mix64(seed ^ mix64(index));
+	}
+
+	/**
+	 * The SplitMix64 finaliser. Turns any long (such as a counter or combined seed) into a well mixed one
+	 */
+	public static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		long a = s0;
+		long b = s1;
+		long result = a + b;
+		b ^= a;
+		s0 = Long.rotateLeft(a, 24) ^ b ^ (b << 16);
+		s1 = Long.rotateLeft(b, 37);
+		return result;
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		// Lemire's multiply and shift, the tiny bias is irrelevant for test data
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * Marsaglia polar method. Unlike the superclass the second value of each pair is discarded rather than cached, so the
+	 * sequence depends only on the seed and it needs no synchronisation
+	 */
+	@Override
+	public double nextGaussian() {
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public float nextFloat() {
+		return (nextLong() >>> 40) * FLOAT_UNIT;
+	}
+
+	@Override
+	public void nextBytes(byte[] bytes) {
+		int i = 0;
+		int len = bytes.length;
+		while (i + 8 <= len) {
+			long rnd = nextLong();
+			for (int n = 0; n < 8; n++, rnd >>>= 8) {
+				bytes[i++] = (byte) rnd;
+			}
+		}
+		if (i < len) {
+			for (long rnd = nextLong(); i < len; rnd >>>= 8) {
+				bytes[i++] = (byte) rnd;
+			}
+		}
+	}
+
+	/**
+	 * Fill the whole array, one random long per element
+	 */
+	public void nextLongs(long[] longs) {
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = nextLong();
+		}
+	}
+
+	/**
+	 * Fill the whole array, two ints per random long
+	 */
+	public void nextInts(int[] ints) {
+		int i = 0;
+		int len = ints.length;
+		while (i + 1 < len) {
+			long rnd = nextLong();
+			ints[i++] = (int) (rnd >>> 32);
+			ints[i++] = (int) rnd;
+		}
+		if (i < len) {
+			ints[i] = nextInt();
+		}
+	}
+
+	/**
+	 * Fill the whole array, four shorts per random long
+	 */
+	public void nextShorts(short[] shorts) {
+		int i = 0;
+		int len = shorts.length;
+		while (i < len) {
+			long rnd = nextLong();
+			for (int n = 0; n < 4 && i < len; n++, rnd >>>= 16) {
+				shorts[i++] = (short) rnd;
+			}
+		}
+	}
+
+	/**
+	 * Fill the whole array, four chars per random long. Chars are any 16 bit value, as per {@link #nextChar()}
+	 */
+	public void nextChars(char[] chars) {
+		int i = 0;
+		int len = chars.length;
+		while (i < len) {
+			long rnd = nextLong();
+			for (int n = 0; n < 4 && i < len; n++, rnd >>>= 16) {
+				chars[i++] = (char) rnd;
+			}
+		}
+	}
+
+	/**
+	 * Fill the whole array, 64 booleans per random long
+	 */
+	public void nextBooleans(boolean[] booleans) {
+		int i = 0;
+		int len = booleans.length;
+		while (i < len) {
+			long rnd = nextLong();
+			for (int n = 0; n < 64 && i < len; n++, rnd >>>= 1) {
+				booleans[i++] = (rnd & 1) != 0;
+			}
+		}
+	}
+
+	/**
+	 * Fill the whole array with doubles between 0 (inclusive) and 1 (exclusive)
+	 */
+	public void nextDoubles(double[] doubles) {
+		for (int i = 0; i < doubles.length; i++) {
+			doubles[i] = (nextLong() >>> 11) * DOUBLE_UNIT;
+		}
+	}
+
+	/**
+	 * Fill the whole array with floats between 0 (inclusive) and 1 (exclusive), two per random long
+	 */
+	public void nextFloats(float[] floats) {
+		int i = 0;
+		int len = floats.length;
+		while (i + 1 < len) {
+			long rnd = nextLong();
+			floats[i++] = (rnd >>> 40) * FLOAT_UNIT;
+			floats[i++] = ((rnd >>> 8) & 0xFFFFFF) * FLOAT_UNIT;
+		}
+		if (i < len) {
+			floats[i] = nextFloat();
+		}
+	}
+
+	public char nextChar() {
+		return (char) next(16);
+	}
+
+	public byte nextByte() {
+		return (byte) next(8);
+	}
+
+	public short nextShort() {
+		return (short) next(16);
+	}
+
+	public BigDecimal nextBigDecimal() {
+		int scale = nextInt();
+		return new BigDecimal(nextBigInteger(), scale);
+	}
 
-BigInteger nextBigInteger() {
-    int randomLen = 1 + nextInt(15);
-    byte[] bytes = new byte[randomLen];
-    nextBytes(bytes);
-    return new BigInteger(bytes);
+	public BigInteger nextBigInteger() {
+		int randomLen = 1 + nextInt(15);
+		byte[] bytes = new byte[randomLen];
+		nextBytes(bytes);
+		return new BigInteger(bytes);
+	}
 }
-}
\ No newline at end of file
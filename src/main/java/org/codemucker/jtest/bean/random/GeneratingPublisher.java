@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the beans of a seeded sequence (see {@link BeanRandom#generateAt(Class, long, long)}), generating them on an
+ * executor only as fast as the subscriber requests them. Nothing is queued, a bean is generated when there is demand for
+ * it and handed straight to the subscriber.
+ */
+class GeneratingPublisher<T> implements BeanFlow.Publisher<T> {
+
+	// beans delivered per executor task before giving other tasks a turn
+	private static final int BATCH_SIZE = 256;
+
+	private final BeanRandom random;
+	private final Class<T> beanClass;
+	private final long seed;
+	private final long count;
+	private final Executor executor;
+
+	GeneratingPublisher(BeanRandom random, Class<T> beanClass, long seed, long count, Executor executor) {
+		this.random = random;
+		this.beanClass = beanClass;
+		this.seed = seed;
+		this.count = count;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(BeanFlow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		GeneratingSubscription subscription = new GeneratingSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		if (count == 0) {
+			// complete without waiting for demand
+			subscription.schedule();
+		}
+	}
+
+	private final class GeneratingSubscription implements BeanFlow.Subscription, Runnable {
+		private final BeanFlow.Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		// number of drain requests outstanding, only the thread taking it from zero runs the drain
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable badRequest;
+
+		// only touched by the draining thread
+		private long index;
+		private boolean done;
+
+		GeneratingSubscription(BeanFlow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				badRequest = new IllegalArgumentException("non positive request " + n);
+			} else {
+				long current;
+				long next;
+				do {
+					current = demand.get();
+					next = current + n;
+					if (next < 0) {
+						next = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(current, next));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			while (true) {
+				if (done || cancelled) {
+					return;
+				}
+				if (badRequest != null) {
+					terminate(badRequest);
+					return;
+				}
+				long requested = demand.get();
+				long emitted = 0;
+				while (emitted != requested && index != count && !cancelled) {
+					T bean;
+					try {
+						bean = random.generateAt(beanClass, seed, index);
+					} catch (Throwable t) {
+						terminate(t);
+						return;
+					}
+					index++;
+					emitted++;
+					try {
+						subscriber.onNext(bean);
+					} catch (Throwable t) {
+						// a broken subscriber, stop delivering rather than lose the drain silently
+						terminate(t);
+						return;
+					}
+					if (emitted == BATCH_SIZE) {
+						break;
+					}
+				}
+				if (index == count && !cancelled) {
+					done = true;
+					subscriber.onComplete();
+					return;
+				}
+				if (emitted != 0 && requested != Long.MAX_VALUE) {
+					demand.addAndGet(-emitted);
+				}
+				if (emitted == BATCH_SIZE) {
+					// still owns the drain, carry on in a new task
+					executor.execute(this);
+					return;
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		private void terminate(Throwable t) {
+			done = true;
+			cancelled = true;
+			subscriber.onError(t);
+		}
+	}
+}
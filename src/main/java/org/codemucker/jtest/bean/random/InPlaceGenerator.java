@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.reflect.Type;
+
+/**
+ * A generator which can re-randomize an existing value in place instead of creating a new one, used when repopulating a
+ * bean (see {@link BeanRandom#repopulate(Object)}) so nested beans and collections are reused.
+ */
+interface InPlaceGenerator {
+
+	/**
+	 * Re-randomize the given current value of the property
+	 *
+	 * @param path the path of the bean owning the property
+	 * @return false if the value can't be changed in place (e.g. an unmodifiable collection), in which case a new value
+	 *         should be generated
+	 */
+	@SuppressWarnings("rawtypes")
+	boolean regenerateInPlace(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object current);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+/**
+ * A random which is reseeded from a base seed and a key before each value is generated, so the value depends only on the
+ * base seed and the key and not on what was generated before it. Used to generate the k-th bean of a seeded sequence
+ * directly, each property keyed by its path.
+ */
+class KeyedRandom extends ExtendedRandom {
+
+	private static final long serialVersionUID = 1L;
+
+	private long base;
+
+	/**
+	 * Set the seed all keys are combined with, such as the seed for a single bean in a sequence
+	 */
+	void setBase(long base) {
+		this.base = base;
+	}
+
+	long getBase() {
+		return base;
+	}
+
+	/**
+	 * Restart this random's sequence from the base seed and the given key
+	 */
+	void reseedFor(long key) {
+		reseed(seedFor(base, key));
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts nanosecond latencies in log-linear buckets, so any value up to Long.MAX_VALUE is recorded in constant time and
+ * space with a relative error under 0.8%. Percentiles report the top of the bucket, so never understate a latency.
+ *
+ * <p>
+ * Not thread safe, record into one histogram per thread and {@link #add(LatencyHistogram)} them afterwards
+ * </p>
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+	private static final int MAX_SHIFT = 63 - (SUB_BUCKET_BITS - 1);
+
+	private final long[] counts = new long[SUB_BUCKETS + MAX_SHIFT * HALF_SUB_BUCKETS];
+	private long totalCount;
+	private long min = Long.MAX_VALUE;
+	private long max;
+	private double sum;
+
+	/**
+	 * Record the given latency in nanoseconds. Negative values are recorded as zero
+	 */
+	public void record(long nanos) {
+		long v = nanos < 0 ? 0 : nanos;
+		counts[indexOf(v)]++;
+		totalCount++;
+		sum += v;
+		if (v < min) {
+			min = v;
+		}
+		if (v > max) {
+			max = v;
+		}
+	}
+
+	/**
+	 * Add all the values recorded in the given histogram to this one
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	private static int indexOf(long v) {
+		if (v < SUB_BUCKETS) {
+			return (int) v;
+		}
+		// shift so the top bits land in the upper half of a sub bucket range
+		int shift = (63 - Long.numberOfLeadingZeros(v)) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((v >>> shift) - HALF_SUB_BUCKETS);
+	}
+
+	/**
+	 * The highest value which falls in the bucket at the given index
+	 */
+	private static long highestValueAt(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		long mantissa = HALF_SUB_BUCKETS + (index - SUB_BUCKETS) % HALF_SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	/**
+	 * Return the latency in nanoseconds which the given percentage (0 to 100) of recorded values are at or below
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValueAt(i), max);
+			}
+		}
+		return max;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : sum / totalCount;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, p50=%s, p99=%s, p99.9=%s, max=%s", totalCount, format(getValueAtPercentile(50)), format(getValueAtPercentile(99)),
+		        format(getValueAtPercentile(99.9)), format(max));
+	}
+
+	private static String format(long nanos) {
+		if (nanos < TimeUnit.MICROSECONDS.toNanos(10)) {
+			return nanos + "ns";
+		} else if (nanos < TimeUnit.MILLISECONDS.toNanos(10)) {
+			return (nanos / 1000) + "us";
+		}
+		return (nanos / 1000000) + "ms";
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.reflect.Type;
+
+/**
+ * A generator which needs to know where in the bean graph it is generating, to create nested beans or apply per path
+ * settings. The path is passed down with each call rather than held in the generator, so a single generator can be used
+ * by many threads at once.
+ */
+interface PathGenerator {
+
+	/**
+	 * @param path the path of the bean the value is being generated for, or null if not generating as part of a bean
+	 *            graph
+	 */
+	@SuppressWarnings("rawtypes")
+	Object generateRandom(PropertyPath path, Class beanClass, String propertyName, Class<?> propertyType, Type genericType);
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codemucker.jtest.bean.BeanException;
+
+/**
+ * Creates a value guaranteed to differ from a given one in a single small step, instead of generating new values until
+ * one differs. Numbers get a random bit flipped, booleans are negated, enums step to the next constant, strings have one
+ * character changed, collections, maps and arrays have one element changed (or one added if empty), and beans are copied
+ * with one property changed.
+ *
+ * <p>
+ * Types it doesn't know how to change (e.g. those with custom providers) fall back to generating new values until one
+ * differs
+ * </p>
+ */
+class Perturber {
+
+	private static final int MAX_ATTEMPTS = 10;
+
+	private final BeanRandom random;
+	private final RandomSource randomSource;
+
+	Perturber(BeanRandom random, RandomSource randomSource) {
+		this.random = random;
+		this.randomSource = randomSource;
+	}
+
+	/**
+	 * Return a value of the given type which doesn't equal the given one. The given value is never modified
+	 *
+	 * @throws BeanException if no different value can be created
+	 */
+	@SuppressWarnings("rawtypes")
+	Object perturb(Object org, Class beanClass, String propertyName, Class<?> type, Type genericType) {
+		if (org == null) {
+			Object val = random.generateRandom(beanClass, propertyName, type, genericType);
+			if (val == null) {
+				throw new BeanException("Can't generate a non null value of type %s for property '%s'", type.getName(), propertyName);
+			}
+			return val;
+		}
+		if (random.getOptions().getProvider(type) != null) {
+			// a custom type, only its provider knows how to create one
+			return regenerate(org, beanClass, propertyName, type, genericType);
+		}
+		ExtendedRandom rnd = randomSource.getRandom();
+		if (org instanceof Boolean) {
+			return !(Boolean) org;
+		} else if (org instanceof Integer) {
+			return (Integer) org ^ (1 << rnd.nextInt(32));
+		} else if (org instanceof Long) {
+			return (Long) org ^ (1L << rnd.nextInt(64));
+		} else if (org instanceof Short) {
+			return (short) ((Short) org ^ (1 << rnd.nextInt(16)));
+		} else if (org instanceof Byte) {
+			return (byte) ((Byte) org ^ (1 << rnd.nextInt(8)));
+		} else if (org instanceof Character) {
+			return (char) ((Character) org ^ (1 << rnd.nextInt(16)));
+		} else if (org instanceof Double) {
+			return perturb((Double) org, rnd);
+		} else if (org instanceof Float) {
+			return perturb((Float) org, rnd);
+		} else if (org instanceof String) {
+			return perturb((String) org, rnd);
+		} else if (org instanceof Enum) {
+			return perturb((Enum<?>) org);
+		} else if (org instanceof BigDecimal) {
+			return perturb((BigDecimal) org, rnd);
+		} else if (org instanceof BigInteger) {
+			return ((BigInteger) org).add(BigInteger.ONE);
+		} else if (org instanceof AtomicInteger) {
+			return new AtomicInteger(((AtomicInteger) org).get() ^ (1 << rnd.nextInt(32)));
+		} else if (org instanceof AtomicLong) {
+			return new AtomicLong(((AtomicLong) org).get() ^ (1L << rnd.nextInt(64)));
+		} else if (org.getClass().isArray()) {
+			return perturbArray(org, beanClass, propertyName, rnd);
+		} else if (org instanceof Map) {
+			Class<?> keyType = typeArg(genericType, 0, 2);
+			Class<?> valueType = typeArg(genericType, 1, 2);
+			if (keyType != null && valueType != null) {
+				return perturbMap((Map<?, ?>) org, beanClass, propertyName, type, keyType, valueType, rnd);
+			}
+		} else if (org instanceof Collection) {
+			Class<?> elementType = typeArg(genericType, 0, 1);
+			if (elementType != null) {
+				return perturbCollection((Collection<?>) org, beanClass, propertyName, type, elementType, rnd);
+			}
+		} else if (random.isBeanType(beanClass, propertyName, type, genericType)
+		        && random.isBeanType(beanClass, propertyName, org.getClass(), org.getClass())) {
+			return random.perturbBean(org);
+		}
+		return regenerate(org, beanClass, propertyName, type, genericType);
+	}
+
+	private static double perturb(double d, ExtendedRandom rnd) {
+		if (Double.isNaN(d)) {
+			return 0;
+		}
+		if (Double.isInfinite(d)) {
+			return d > 0 ? Double.MAX_VALUE : -Double.MAX_VALUE;
+		}
+		// a mantissa bit, so never produces a NaN or infinity
+		return Double.longBitsToDouble(Double.doubleToRawLongBits(d) ^ (1L << rnd.nextInt(52)));
+	}
+
+	private static BigDecimal perturb(BigDecimal d, ExtendedRandom rnd) {
+		// keep the scale, generated values have random scales which adding a differently scaled value would have to
+		// rescale to
+		BigInteger unscaled = d.unscaledValue();
+		return new BigDecimal(unscaled.flipBit(rnd.nextInt(Math.max(1, unscaled.bitLength()))), d.scale());
+	}
+
+	private static float perturb(float f, ExtendedRandom rnd) {
+		if (Float.isNaN(f)) {
+			return 0;
+		}
+		if (Float.isInfinite(f)) {
+			return f > 0 ? Float.MAX_VALUE : -Float.MAX_VALUE;
+		}
+		return Float.intBitsToFloat(Float.floatToRawIntBits(f) ^ (1 << rnd.nextInt(23)));
+	}
+
+	private static String perturb(String s, ExtendedRandom rnd) {
+		if (s.isEmpty()) {
+			return String.valueOf((char) ('a' + rnd.nextInt(26)));
+		}
+		char[] chars = s.toCharArray();
+		int i = rnd.nextInt(chars.length);
+		char c = (char) ('a' + rnd.nextInt(26));
+		chars[i] = c == chars[i] ? (c == 'z' ? 'a' : (char) (c + 1)) : c;
+		return new String(chars);
+	}
+
+	private static Object perturb(Enum<?> e) {
+		Object[] constants = e.getDeclaringClass().getEnumConstants();
+		if (constants.length < 2) {
+			throw new BeanException("Enum %s has only the one constant, can't create a different value", e.getDeclaringClass().getName());
+		}
+		return constants[(e.ordinal() + 1) % constants.length];
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object perturbArray(Object org, Class beanClass, String propertyName, ExtendedRandom rnd) {
+		Class<?> componentType = org.getClass().getComponentType();
+		int len = Array.getLength(org);
+		if (len == 0) {
+			Object arr = Array.newInstance(componentType, 1);
+			Array.set(arr, 0, perturb(null, beanClass, propertyName, componentType, null));
+			return arr;
+		}
+		Object arr = Array.newInstance(componentType, len);
+		System.arraycopy(org, 0, arr, 0, len);
+		int i = rnd.nextInt(len);
+		Array.set(arr, i, perturb(Array.get(org, i), beanClass, propertyName, componentType, null));
+		return arr;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object perturbCollection(Collection<?> org, Class beanClass, String propertyName, Class<?> type, Class<?> elementType, ExtendedRandom rnd) {
+		Collection copy = (Collection) newInstance(org.getClass(), type, elementType, org.size() + 1);
+		if (org.isEmpty()) {
+			copy.add(perturb(null, beanClass, propertyName, elementType, null));
+			return copy;
+		}
+		// keeps the order of lists, and for sets the changed element can only make it differ more
+		int change = rnd.nextInt(org.size());
+		int i = 0;
+		for (Object ele : org) {
+			copy.add(i++ == change ? perturb(ele, beanClass, propertyName, elementType, null) : ele);
+		}
+		return copy;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object perturbMap(Map<?, ?> org, Class beanClass, String propertyName, Class<?> type, Class<?> keyType, Class<?> valueType, ExtendedRandom rnd) {
+		Map copy = (Map) newInstance(org.getClass(), type, keyType, org.size() + 1);
+		copy.putAll(org);
+		if (org.isEmpty()) {
+			copy.put(perturb(null, beanClass, propertyName, keyType, null), perturb(null, beanClass, propertyName, valueType, null));
+			return copy;
+		}
+		Iterator<? extends Map.Entry<?, ?>> entries = org.entrySet().iterator();
+		for (int skip = rnd.nextInt(org.size()); skip > 0; skip--) {
+			entries.next();
+		}
+		Map.Entry<?, ?> entry = entries.next();
+		copy.put(entry.getKey(), perturb(entry.getValue(), beanClass, propertyName, valueType, null));
+		return copy;
+	}
+
+	/**
+	 * Create an empty collection or map, of the same class as the original if possible, otherwise of the declared type
+	 */
+	private Object newInstance(Class<?> orgType, Class<?> declaredType, Class<?> elementType, int size) {
+		CollectionFactory<?> factory = random.getOptions().getCollectionFactory(orgType);
+		if (factory == null) {
+			try {
+				factory = CollectionFactories.get(orgType);
+			} catch (BeanException e) {
+				// e.g. an unmodifiable wrapper
+				factory = random.getOptions().getCollectionFactory(declaredType);
+				if (factory == null) {
+					factory = CollectionFactories.get(declaredType);
+				}
+			}
+		}
+		return factory.newInstance(elementType, size);
+	}
+
+	private static Class<?> typeArg(Type type, int index, int numTypeArgs) {
+		if (type instanceof ParameterizedType) {
+			Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+			if (args.length == numTypeArgs && args[index] instanceof Class) {
+				return (Class<?>) args[index];
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private Object regenerate(Object org, Class beanClass, String propertyName, Class<?> type, Type genericType) {
+		for (int i = 0; i < MAX_ATTEMPTS; i++) {
+			Object newVal = random.generateRandom(beanClass, propertyName, type, genericType);
+			if (newVal != null && !newVal.equals(org)) {
+				return newVal;
+			}
+		}
+		throw new BeanException("Exceeded max number of attempts (%d) to generate different random value of type '%s', for value '%s'", MAX_ATTEMPTS,
+		        type.getName(), org);
+	}
+}
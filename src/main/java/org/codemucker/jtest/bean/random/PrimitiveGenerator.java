@@ -20,89 +20,150 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class PrimitiveGenerator implements RandomGenerator<Object>{
 	
-	private static Map<Class<?>, RandomGenerator<?>> builtInProviders = new HashMap<Class<?>, RandomGenerator<?>>();
+	private final Map<Class<?>, RandomGenerator<?>> builtInProviders = new HashMap<Class<?>, RandomGenerator<?>>();
 
-	private static final ExtendedRandom RANDOM = new ExtendedRandom();
+	private final RandomSource randomSource;
 
-	static {
-		internalRegisterPrimitiveProvider(Boolean.class, Boolean.TYPE, new RandomGenerator<Boolean>() {
+	public PrimitiveGenerator() {
+		this(new ThreadLocalRandomSource());
+	}
+
+	public PrimitiveGenerator(RandomSource randomSource) {
+		this.randomSource = randomSource;
+		registerProviders();
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void registerProviders() {
+		internalRegisterPrimitiveProvider(Boolean.class, Boolean.TYPE, new BulkGenerator<Boolean>() {
 			public Boolean generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextBoolean();
+				return randomSource.getRandom().nextBoolean();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextBoolean();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Byte.class, Byte.TYPE, new RandomGenerator<Byte>() {
+		internalRegisterPrimitiveProvider(Byte.class, Byte.TYPE, new BulkGenerator<Byte>() {
 			public Byte generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextByte();
+				return randomSource.getRandom().nextByte();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextByte();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Character.class, Character.TYPE, new RandomGenerator<Character>() {
+		internalRegisterPrimitiveProvider(Character.class, Character.TYPE, new BulkGenerator<Character>() {
 			public Character generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextChar();
+				return randomSource.getRandom().nextChar();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextChar();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Short.class, Short.TYPE, new RandomGenerator<Short>() {
+		internalRegisterPrimitiveProvider(Short.class, Short.TYPE, new BulkGenerator<Short>() {
 			public Short generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextShort();
+				return randomSource.getRandom().nextShort();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextShort();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Integer.class, Integer.TYPE, new RandomGenerator<Integer>() {
+		internalRegisterPrimitiveProvider(Integer.class, Integer.TYPE, new BulkGenerator<Integer>() {
 			public Integer generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextInt();
+				return randomSource.getRandom().nextInt();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextInt();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Long.class, Long.TYPE, new RandomGenerator<Long>() {
+		internalRegisterPrimitiveProvider(Long.class, Long.TYPE, new BulkGenerator<Long>() {
 			public Long generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextLong();
+				return randomSource.getRandom().nextLong();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextLong();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Float.class, Float.TYPE, new RandomGenerator<Float>() {
+		internalRegisterPrimitiveProvider(Float.class, Float.TYPE, new BulkGenerator<Float>() {
 			public Float generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextFloat();
+				return randomSource.getRandom().nextFloat();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextFloat();
+				}
 			}
 		});
-		internalRegisterPrimitiveProvider(Double.class, Double.TYPE, new RandomGenerator<Double>() {
+		internalRegisterPrimitiveProvider(Double.class, Double.TYPE, new BulkGenerator<Double>() {
 			public Double generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextDouble();
+				return randomSource.getRandom().nextDouble();
+			}
+
+			public void generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+				ExtendedRandom random = randomSource.getRandom();
+				for (int i = 0; i < into.length; i++) {
+					into[i] = random.nextDouble();
+				}
 			}
 		});
 		internalRegisterProvider(BigDecimal.class, new RandomGenerator<BigDecimal>() {
 			public BigDecimal generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextBigDecimal();
+				return randomSource.getRandom().nextBigDecimal();
 			}
 		});
 		internalRegisterProvider(BigInteger.class, new RandomGenerator<BigInteger>() {
 			public BigInteger generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return RANDOM.nextBigInteger();
+				return randomSource.getRandom().nextBigInteger();
 			}
 		});
 		internalRegisterProvider(AtomicInteger.class, new RandomGenerator<AtomicInteger>() {
 			public AtomicInteger generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return new AtomicInteger(RANDOM.nextInt());
+				return new AtomicInteger(randomSource.getRandom().nextInt());
 			}
 		});
 		internalRegisterProvider(AtomicLong.class, new RandomGenerator<AtomicLong>() {
 			public AtomicLong generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return new AtomicLong(RANDOM.nextLong());
-			}
-		});
-		internalRegisterProvider(String.class, new RandomGenerator<String>() {
-			public String generateRandom(Class bean, String propertyName, Class<?> propertyType, Type genericType) {
-				return UUID.randomUUID().toString();
+				return new AtomicLong(randomSource.getRandom().nextLong());
 			}
 		});
+		internalRegisterProvider(String.class, new StringGenerator(randomSource));
 	}
 
-	private static <T> void internalRegisterProvider(Class<T> type, RandomGenerator<T> provider) {
+	private <T> void internalRegisterProvider(Class<T> type, RandomGenerator<T> provider) {
 		builtInProviders.put(type, provider);
 	}
 
-	private static <T> void internalRegisterPrimitiveProvider(Class<T> type, Class<T> type2,
+	private <T> void internalRegisterPrimitiveProvider(Class<T> type, Class<T> type2,
 	        RandomGenerator<T> provider) {
 		builtInProviders.put(type, provider);
 		builtInProviders.put(type2, provider);
@@ -114,6 +175,16 @@ public class PrimitiveGenerator implements RandomGenerator<Object>{
 		return provider.generateRandom(null, propertyName, propertyType, genericType);
 	}
 
+	/**
+	 * Return the provider for the given primitive (or boxed primitive) type, so callers can cache it instead of looking it
+	 * up on every call
+	 * 
+	 * @return null if the type is not supported
+	 */
+	public RandomGenerator<?> getProvider(Class<?> type) {
+		return builtInProviders.get(type);
+	}
+
 	public boolean supportsType(Class<?> type){
 		return builtInProviders.containsKey(type);
 	}
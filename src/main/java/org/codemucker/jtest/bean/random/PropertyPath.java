@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A node in the tree of property paths visited while populating a bean graph. Nodes are interned, so walking the same
+ * graph again reuses the same nodes, and everything derived from the path (the dotted path itself, which properties are
+ * ignored, whether creating the bean would recurse) is worked out once when the node is created.
+ *
+ * <p>
+ * The root node represents the top level bean, each child a nested bean created for a property (or ctor arg, in which
+ * case the name is null).
+ * </p>
+ *
+ * <p>
+ * Nodes are shared by all threads populating via the same {@link BeanRandom}. New children are added lock free, a thread
+ * losing the race simply retries and finds the winner's node.
+ * </p>
+ */
+class PropertyPath {
+
+	private static final PropertyPath[] NO_CHILDREN = new PropertyPath[0];
+	private static final long ROOT_SEED = 0;
+
+	private static final AtomicReferenceFieldUpdater<PropertyPath, PropertyPath[]> CHILDREN = AtomicReferenceFieldUpdater
+	        .newUpdater(PropertyPath.class, PropertyPath[].class, "children");
+
+	private final PropertyPath parent;
+	private final String name;
+	private final Class<?> beanType;
+	private final String path;
+	private final long id;
+	private final boolean recursive;
+	private final Collection<String> ignoreProperties;
+
+	private volatile PropertyPath[] children = NO_CHILDREN;
+
+	// the populator and skip flags are read and written together
+	private volatile Skip skip;
+
+	private PropertyPath(PropertyPath parent, String name, Class<?> beanType, Collection<String> ignoreProperties) {
+		this.parent = parent;
+		this.name = name;
+		this.beanType = beanType;
+		this.ignoreProperties = ignoreProperties;
+		if (parent == null) {
+			this.path = "";
+			this.id = hash(ROOT_SEED, beanType.getName());
+			this.recursive = false;
+		} else {
+			this.path = parent.path + name + ".";
+			this.id = hash(parent.id, name);
+			this.recursive = parent.isCreatingType(beanType);
+		}
+	}
+
+	/**
+	 * Create the root path for populating a top level bean of the given type
+	 *
+	 * @param ignoreProperties the full dotted property paths which should not be populated
+	 */
+	static PropertyPath root(Class<?> beanType, Collection<String> ignoreProperties) {
+		return new PropertyPath(null, null, beanType, ignoreProperties);
+	}
+
+	/**
+	 * Return the interned child path for a nested bean of the given type created for the given property
+	 */
+	PropertyPath child(String propertyName, Class<?> childBeanType) {
+		PropertyPath created = null;
+		while (true) {
+			PropertyPath[] current = children;
+			for (PropertyPath child : current) {
+				if (child.beanType == childBeanType && (child.name == null ? propertyName == null : child.name.equals(propertyName))) {
+					return child;
+				}
+			}
+			if (created == null) {
+				created = new PropertyPath(this, propertyName, childBeanType, ignoreProperties);
+			}
+			PropertyPath[] grown = new PropertyPath[current.length + 1];
+			System.arraycopy(current, 0, grown, 0, current.length);
+			grown[current.length] = created;
+			if (CHILDREN.compareAndSet(this, current, grown)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * If a bean of the given type is already being created on this path. The top level bean is not included, a bean may
+	 * contain one nested instance of its own type
+	 */
+	private boolean isCreatingType(Class<?> type) {
+		for (PropertyPath p = this; p.parent != null; p = p.parent) {
+			if (p.beanType == type) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * If creating the bean at this path would recurse into a bean of the same type already being created
+	 */
+	boolean isRecursive() {
+		return recursive;
+	}
+
+	/**
+	 * Return which of the given populator's property steps to skip on this path, null if none are to be skipped
+	 */
+	boolean[] getSkip(BeanPopulator populator) {
+		Skip s = skip;
+		if (s == null || s.populator != populator) {
+			s = new Skip(populator, populator.calculateSkip(this));
+			skip = s;
+		}
+		return s.skip;
+	}
+
+	/**
+	 * If the given property on the bean at this path is ignored. Builds the full path so prefer {@link #getSkip(BeanPopulator)}
+	 * on hot paths
+	 */
+	boolean isIgnored(String propertyName) {
+		return !ignoreProperties.isEmpty() && ignoreProperties.contains(path + propertyName);
+	}
+
+	boolean hasIgnores() {
+		return !ignoreProperties.isEmpty();
+	}
+
+	PropertyPath getParent() {
+		return parent;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	Class<?> getBeanType() {
+		return beanType;
+	}
+
+	/**
+	 * The dotted path to the bean at this node including the trailing dot, or the empty string for the root
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * A stable hash of this path which is the same across runs
+	 */
+	long getId() {
+		return id;
+	}
+
+	/**
+	 * A 64 bit hash of the given string, stable across JVMs
+	 */
+	static long hash(long seed, String s) {
+		// FNV-1a, good enough to tell paths apart and stable across JVMs
+		long h = seed ^ 0xcbf29ce484222325L;
+		if (s != null) {
+			for (int i = 0; i < s.length(); i++) {
+				h ^= s.charAt(i);
+				h *= 0x100000001b3L;
+			}
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+	private static final class Skip {
+		final BeanPopulator populator;
+		final boolean[] skip;
+
+		Skip(BeanPopulator populator, boolean[] skip) {
+			this.populator = populator;
+			this.skip = skip;
+		}
+	}
+}
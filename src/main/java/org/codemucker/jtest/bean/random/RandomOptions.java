@@ -21,6 +21,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.codemucker.jtest.bean.BeanOptions;
 
@@ -31,17 +33,33 @@ public class RandomOptions extends BeanOptions {
 	private final Collection<String> excludePackages = new ArrayList<String>();
 
 	private final Map<Class<?>, RandomGenerator<?>> randomProviders = new HashMap<Class<?>, RandomGenerator<?>>();
+	private final Map<Class<?>, CollectionFactory<?>> collectionFactories = new HashMap<Class<?>, CollectionFactory<?>>();
 
 	private boolean failOnNonSupportedPropertyType = false;
 	private boolean failOnRecursiveBeanCreation = true;
+
+	private RandomSource randomSource = new ThreadLocalRandomSource();
+	// while set the calling thread's randoms come from here instead of the source, see BeanRandom#generateAt
+	private final ThreadLocal<ExtendedRandom> routedRandoms = new ThreadLocal<ExtendedRandom>();
+
+	private SizeDistribution collectionSize = CollectionGenerator.DEFAULT_SIZE;
+	private final Map<Class<?>, SizeDistribution> collectionSizesByType = new HashMap<Class<?>, SizeDistribution>();
+	private final Map<String, SizeDistribution> collectionSizesByPath = new HashMap<String, SizeDistribution>();
+
+	private final Map<Class<?>, EnumDistribution> enumDistributions = new HashMap<Class<?>, EnumDistribution>();
+
+	private SizeDistribution stringLength = StringGenerator.DEFAULT_LENGTH;
+	private Alphabet stringAlphabet = StringGenerator.DEFAULT_ALPHABET;
 	
 	public RandomOptions excludePackage(String pkg) {
 		excludePackages.add(pkg);
+		changed();
 		return this;
 	}
 	
 	public <T> RandomOptions addProvider(Class<T> type, RandomGenerator<T> provider) {
 		randomProviders.put(type, provider);
+		changed();
 		return this;
 	}
 	
@@ -49,6 +67,20 @@ public class RandomOptions extends BeanOptions {
 		return (RandomGenerator<T>) randomProviders.get(type);
 	}
 	
+	/**
+	 * Use the given factory to create collections or maps of the given type, in place of the built in
+	 * {@link CollectionFactories}
+	 */
+	public <T> RandomOptions addCollectionFactory(Class<T> type, CollectionFactory<? extends T> factory) {
+		collectionFactories.put(type, factory);
+		changed();
+		return this;
+	}
+
+	public CollectionFactory<?> getCollectionFactory(Class<?> type) {
+		return collectionFactories.get(type);
+	}
+
 	public boolean isGeneratePropertyType(Object bean, String propertyName, Class<?> type, Type genericType){
 		String name = type.getName();
 		if (isTypeInPackages(name, defaultExcludePackages)) {
@@ -70,12 +102,147 @@ public class RandomOptions extends BeanOptions {
 		return false;
 	}
 
+	/**
+	 * Derive all generated values from the given master seed, so a run can be reproduced
+	 */
+	public RandomOptions seed(long seed) {
+		return randomSource(new ThreadLocalRandomSource(seed));
+	}
+
+	/**
+	 * Set where the generators get their randoms from
+	 */
+	public RandomOptions randomSource(RandomSource randomSource) {
+		this.randomSource = randomSource;
+		changed();
+		return this;
+	}
+
+	public RandomSource getRandomSource() {
+		return randomSource;
+	}
+
+	/**
+	 * Return the random the calling thread should use. While a keyed bean is being generated on the calling thread this is
+	 * the keyed random, so custom providers drawing from here generate keyed values too
+	 */
+	public ExtendedRandom getRandom() {
+		ExtendedRandom routed = routedRandoms.get();
+		return routed != null ? routed : randomSource.getRandom();
+	}
+
+	/**
+	 * Have {@link #getRandom()} return the given random on the calling thread, or the source's again if null
+	 *
+	 * @return the random previously routed to, to restore once done
+	 */
+	ExtendedRandom routeRandom(ExtendedRandom random) {
+		ExtendedRandom previous = routedRandoms.get();
+		if (random == null) {
+			routedRandoms.remove();
+		} else {
+			routedRandoms.set(random);
+		}
+		return previous;
+	}
+
+	/**
+	 * Set how many elements generated collections, maps and arrays have, unless overridden by type or property path
+	 */
+	public RandomOptions collectionSize(SizeDistribution size) {
+		this.collectionSize = size;
+		changed();
+		return this;
+	}
+
+	/**
+	 * Set how many elements generated collections, maps or arrays of exactly the given type have (e.g. List.class or
+	 * byte[].class), unless overridden by property path
+	 */
+	public RandomOptions collectionSize(Class<?> collectionType, SizeDistribution size) {
+		collectionSizesByType.put(collectionType, size);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Set how many elements the collection, map or array at the given full property path has. Paths are dotted as per
+	 * {@link #ignoreProperty(String)}
+	 */
+	public RandomOptions collectionSize(String propertyPath, SizeDistribution size) {
+		collectionSizesByPath.put(propertyPath, size);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Return the size distribution for collections of the given type, ignoring any set by property path
+	 */
+	public SizeDistribution getCollectionSize(Class<?> collectionType) {
+		SizeDistribution size = collectionSizesByType.get(collectionType);
+		return size != null ? size : collectionSize;
+	}
+
+	/**
+	 * Return the size distribution set for the given full property path, or null if none
+	 */
+	public SizeDistribution getCollectionSize(String propertyPath) {
+		return collectionSizesByPath.get(propertyPath);
+	}
+
+	public boolean hasCollectionSizesByPath() {
+		return !collectionSizesByPath.isEmpty();
+	}
+
+	/**
+	 * Set how the constants of the given enum are picked, instead of evenly
+	 */
+	public <E extends Enum<E>> RandomOptions enumDistribution(Class<E> enumType, EnumDistribution distribution) {
+		enumDistributions.put(enumType, distribution);
+		changed();
+		return this;
+	}
+
+	/**
+	 * Return how to pick constants of the given enum, or null to pick them evenly
+	 */
+	public EnumDistribution getEnumDistribution(Class<?> enumType) {
+		return enumDistributions.get(enumType);
+	}
+
+	/**
+	 * Set how long generated strings are
+	 */
+	public RandomOptions stringLength(SizeDistribution stringLength) {
+		this.stringLength = stringLength;
+		changed();
+		return this;
+	}
+
+	public SizeDistribution getStringLength() {
+		return stringLength;
+	}
+
+	/**
+	 * Set which characters generated strings are made of
+	 */
+	public RandomOptions stringAlphabet(Alphabet stringAlphabet) {
+		this.stringAlphabet = stringAlphabet;
+		changed();
+		return this;
+	}
+
+	public Alphabet getStringAlphabet() {
+		return stringAlphabet;
+	}
+
 	public boolean isFailOnRecursiveBeanCreation() {
 		return failOnRecursiveBeanCreation;
 	}
 
 	public BeanOptions failOnRecursiveBeanCreation(boolean failOnRecursiveBeanCreation) {
 		this.failOnRecursiveBeanCreation = failOnRecursiveBeanCreation;
+		changed();
 		return this;
 	}
 
@@ -85,14 +252,58 @@ public class RandomOptions extends BeanOptions {
 
 	public BeanOptions failOnNonSupportedPropertyType(boolean failOnNonSupportedPropertyType) {
 		this.failOnNonSupportedPropertyType = failOnNonSupportedPropertyType;
+		changed();
 		return this;
 	}
 
+	/**
+	 * Return a description of everything in these options which affects the generated values, other than the random
+	 * source. Unlike {@link #getFingerprint()} this is the same from one run to the next, so can key data persisted
+	 * between runs. Configured providers, factories and distributions are described by their toString, so ones which
+	 * don't override it never match a previous run
+	 */
+	public String getStableFingerprint() {
+		Map<String, Object> ignoreOnClass = new TreeMap<String, Object>();
+		for (Map.Entry<String, Collection<String>> entry : getIgnorePropertiesOnClass().entrySet()) {
+			ignoreOnClass.put(entry.getKey(), new TreeSet<String>(entry.getValue()));
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("failOnInvalidGetters=").append(isFailOnInvalidGetters());
+		sb.append(",failOnMissingSetters=").append(isFailOnMissingSetters());
+		sb.append(",failOnAdditionalSetters=").append(isFailOnAdditionalSetters());
+		sb.append(",failOnMisMatchingFields=").append(isFailOnMisMatchingFields());
+		sb.append(",failOnNonSupportedPropertyType=").append(failOnNonSupportedPropertyType);
+		sb.append(",failOnRecursiveBeanCreation=").append(failOnRecursiveBeanCreation);
+		sb.append(",extractFields=").append(isExtractFields());
+		sb.append(",makeAccessible=").append(isMakeAccessible());
+		sb.append(",ignore=").append(new TreeSet<String>(getIgnoreProperties()));
+		sb.append(",ignoreOnClass=").append(ignoreOnClass);
+		sb.append(",excludePackages=").append(excludePackages);
+		sb.append(",providers=").append(byClassName(randomProviders));
+		sb.append(",collectionFactories=").append(byClassName(collectionFactories));
+		sb.append(",collectionSize=").append(collectionSize);
+		sb.append(",collectionSizesByType=").append(byClassName(collectionSizesByType));
+		sb.append(",collectionSizesByPath=").append(new TreeMap<String, SizeDistribution>(collectionSizesByPath));
+		sb.append(",enumDistributions=").append(byClassName(enumDistributions));
+		sb.append(",stringLength=").append(stringLength);
+		sb.append(",stringAlphabet=").append(stringAlphabet);
+		return sb.toString();
+	}
+
+	private static Map<String, Object> byClassName(Map<Class<?>, ?> map) {
+		Map<String, Object> sorted = new TreeMap<String, Object>();
+		for (Map.Entry<Class<?>, ?> entry : map.entrySet()) {
+			sorted.put(entry.getKey().getName(), entry.getValue());
+		}
+		return sorted;
+	}
+
 	@Override
 	public void setFailSilently() {
 		super.setFailSilently();
 		failOnNonSupportedPropertyType = false;
 		failOnRecursiveBeanCreation = false;
+		changed();
 	}
 
 }
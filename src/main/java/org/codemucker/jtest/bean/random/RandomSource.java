@@ -0,0 +1,28 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+/**
+ * Supplies the random used by the generators. Implementations must never hand the same random to more than one thread at
+ * a time, so generators can draw from it without any synchronisation.
+ */
+public interface RandomSource {
+
+	/**
+	 * Return the random for the calling thread
+	 */
+	ExtendedRandom getRandom();
+}
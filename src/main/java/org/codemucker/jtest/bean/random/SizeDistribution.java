@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.Random;
+
+/**
+ * Decides how big to make a generated value, such as the length of a string
+ */
+public abstract class SizeDistribution {
+
+	/**
+	 * Return the next size, never negative
+	 */
+	public abstract int nextSize(Random random);
+
+	/**
+	 * Always the given size
+	 */
+	public static SizeDistribution fixed(final int size) {
+		checkNotNegative(size);
+		return new SizeDistribution() {
+			@Override
+			public int nextSize(Random random) {
+				return size;
+			}
+
+			@Override
+			public String toString() {
+				return "fixed(" + size + ")";
+			}
+		};
+	}
+
+	/**
+	 * Evenly distributed between min and max, both inclusive
+	 */
+	public static SizeDistribution uniform(final int min, final int max) {
+		checkNotNegative(min);
+		if (max < min) {
+			throw new IllegalArgumentException(String.format("max (%d) must be greater than or equal to min (%d)", max, min));
+		}
+		final long range = (long) max - min + 1;
+		return new SizeDistribution() {
+			@Override
+			public int nextSize(Random random) {
+				return (int) (min + (((random.nextInt() & 0xFFFFFFFFL) * range) >>> 32));
+			}
+
+			@Override
+			public String toString() {
+				return "uniform(" + min + "," + max + ")";
+			}
+		};
+	}
+
+	/**
+	 * Normally distributed around the mean, never less than zero
+	 */
+	public static SizeDistribution normal(final int mean, final int stdDev) {
+		checkNotNegative(mean);
+		checkNotNegative(stdDev);
+		return new SizeDistribution() {
+			@Override
+			public int nextSize(Random random) {
+				long size = Math.round(mean + random.nextGaussian() * stdDev);
+				return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
+			}
+
+			@Override
+			public String toString() {
+				return "normal(" + mean + "," + stdDev + ")";
+			}
+		};
+	}
+
+	/**
+	 * Between min and max, both inclusive, spread evenly across the orders of magnitude in between (log uniform). Most
+	 * sizes are small but the occasional one is huge
+	 */
+	public static SizeDistribution longTail(final int min, final int max) {
+		checkNotNegative(min);
+		if (max < min) {
+			throw new IllegalArgumentException(String.format("max (%d) must be greater than or equal to min (%d)", max, min));
+		}
+		// StrictMath, as Math may differ in the last bit between JVMs, which would change seeded sizes
+		final double logMin = StrictMath.log(min + 1.0);
+		final double logRange = StrictMath.log(max + 1.0) - logMin;
+		return new SizeDistribution() {
+			@Override
+			public int nextSize(Random random) {
+				int size = (int) (StrictMath.exp(logMin + random.nextDouble() * logRange) - 1);
+				return Math.max(min, Math.min(max, size));
+			}
+
+			@Override
+			public String toString() {
+				return "longTail(" + min + "," + max + ")";
+			}
+		};
+	}
+
+	static void checkNotNegative(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size must not be negative, but was " + size);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.lang.reflect.Type;
+
+/**
+ * Generates strings from the configured random source, with a configurable length and set of characters
+ */
+public class StringGenerator implements BulkGenerator<String> {
+
+	public static final SizeDistribution DEFAULT_LENGTH = SizeDistribution.uniform(8, 16);
+	public static final Alphabet DEFAULT_ALPHABET = Alphabet.ALPHANUMERIC;
+
+	private final RandomSource randomSource;
+	private final SizeDistribution length;
+	private final Alphabet alphabet;
+
+	public StringGenerator(RandomSource randomSource) {
+		this(randomSource, DEFAULT_LENGTH, DEFAULT_ALPHABET);
+	}
+
+	public StringGenerator(RandomSource randomSource, SizeDistribution length, Alphabet alphabet) {
+		this.randomSource = randomSource;
+		this.length = length;
+		this.alphabet = alphabet;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public String generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+		ExtendedRandom random = randomSource.getRandom();
+		char[] chars = new char[length.nextSize(random)];
+		alphabet.fill(random, chars, 0, chars.length);
+		return new String(chars);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType, Object[] into) {
+		ExtendedRandom random = randomSource.getRandom();
+		char[] chars = new char[0];
+		for (int i = 0; i < into.length; i++) {
+			int len = length.nextSize(random);
+			if (chars.length < len) {
+				chars = new char[len];
+			}
+			alphabet.fill(random, chars, 0, len);
+			into[i] = new String(chars, 0, len);
+		}
+	}
+
+	/**
+	 * Fill the given range of the buffer with random characters from this generator's alphabet, for callers building
+	 * their own char data in bulk
+	 */
+	public void fill(char[] buf, int offset, int len) {
+		alphabet.fill(randomSource.getRandom(), buf, offset, len);
+	}
+
+	public SizeDistribution getLength() {
+		return length;
+	}
+
+	public Alphabet getAlphabet() {
+		return alphabet;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gives each thread its own random, each split off a single master random. Threads never contend on a shared seed, and
+ * a single threaded run is fully reproducible from the master seed.
+ */
+public class ThreadLocalRandomSource implements RandomSource {
+
+	private final long seed;
+	private final ExtendedRandom master;
+	private final AtomicLong runs = new AtomicLong();
+
+	private final ThreadLocal<ExtendedRandom> randoms = new ThreadLocal<ExtendedRandom>() {
+		@Override
+		protected ExtendedRandom initialValue() {
+			synchronized (master) {
+				return master.split();
+			}
+		}
+	};
+
+	/**
+	 * Create a source with a random master seed
+	 */
+	public ThreadLocalRandomSource() {
+		this(ExtendedRandom.mix64(System.nanoTime() ^ System.identityHashCode(new Object())));
+	}
+
+	public ThreadLocalRandomSource(long seed) {
+		this.seed = seed;
+		this.master = new ExtendedRandom(seed);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Return the seed for the next of a series of runs, such as parallel populations, each of which derives all its
+	 * randoms from a single seed. Every call returns a new seed, and the n-th call on sources with the same master seed
+	 * always returns the same one
+	 */
+	public long nextRunSeed() {
+		return ExtendedRandom.seedFor(seed, runs.getAndIncrement());
+	}
+
+	@Override
+	public ExtendedRandom getRandom() {
+		return randoms.get();
+	}
+}
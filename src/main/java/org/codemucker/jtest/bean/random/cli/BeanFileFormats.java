@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random.cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codemucker.jtest.JTestException;
+import org.codemucker.jtest.bean.export.BeanExporter;
+
+/**
+ * The built in {@link BeanFileFormat}s, looked up by name on the command line
+ */
+public final class BeanFileFormats {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * One bean per line, as returned by the bean's toString
+	 */
+	public static final BeanFileFormat TEXT = new BeanFileFormat() {
+		@Override
+		public String getExtension() {
+			return "txt";
+		}
+
+		@Override
+		public BeanFileWriter open(File file, Class<?> beanClass) throws IOException {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8), 64 * 1024);
+			return new BeanFileWriter() {
+				@Override
+				public void write(Object bean) throws IOException {
+					writer.write(String.valueOf(bean));
+					writer.write('\n');
+				}
+
+				@Override
+				public void close() throws IOException {
+					writer.close();
+				}
+			};
+		}
+	};
+
+	/**
+	 * One JSON object per line, see {@link BeanExporter}
+	 */
+	public static final BeanFileFormat JSON_LINES = new ExporterFormat(BeanExporter.Format.JSON_LINES);
+
+	/**
+	 * One CSV row per bean with a header row, see {@link BeanExporter}
+	 */
+	public static final BeanFileFormat CSV = new ExporterFormat(BeanExporter.Format.CSV);
+
+	private static final Map<String, BeanFileFormat> BY_NAME = new LinkedHashMap<String, BeanFileFormat>();
+
+	static {
+		BY_NAME.put("text", TEXT);
+		BY_NAME.put("jsonl", JSON_LINES);
+		BY_NAME.put("csv", CSV);
+	}
+
+	private BeanFileFormats() {
+		// static only
+	}
+
+	/**
+	 * Return the format with the given name
+	 *
+	 * @throws JTestException if there is no such format
+	 */
+	public static BeanFileFormat forName(String name) {
+		BeanFileFormat format = BY_NAME.get(name.toLowerCase());
+		if (format == null) {
+			throw new JTestException("Unknown format '%s', expected one of %s", name, BY_NAME.keySet());
+		}
+		return format;
+	}
+
+	private static final class ExporterFormat implements BeanFileFormat {
+		private final BeanExporter.Format format;
+
+		ExporterFormat(BeanExporter.Format format) {
+			this.format = format;
+		}
+
+		@Override
+		public String getExtension() {
+			return format.getExtension();
+		}
+
+		@Override
+		public BeanFileWriter open(File file, Class<?> beanClass) throws IOException {
+			final BeanExporter.ExportWriter writer = new BeanExporter(beanClass, format).open(file);
+			return new BeanFileWriter() {
+				@Override
+				public void write(Object bean) throws IOException {
+					writer.write(bean);
+				}
+
+				@Override
+				public void close() throws IOException {
+					writer.close();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.codemucker.jtest.JTestException;
+
+/**
+ * Command line entry point to generate one shard of a seeded bean dataset. Run one per JVM with the same class, seed and
+ * count, and a different shard index, to split building a large dataset across processes.
+ *
+ * <pre>
+ * GenerateBeans --class com.acme.Order --seed 42 --count 100000000 --shard 3 --shards 16 [--threads 8] [--out dir] [--format text|jsonl|csv]
+ * </pre>
+ */
+public class GenerateBeans {
+
+	private static final String USAGE = "usage: GenerateBeans --class <bean class> --count <total beans> [--seed <seed, default 0>]"
+	        + " [--shard <index, default 0>] [--shards <count, default 1>] [--threads <default #cpus>] [--out <dir>] [--format <text|jsonl|csv>]";
+
+	public static void main(String[] args) {
+		int exitCode = run(args, System.out, System.err);
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
+	}
+
+	/**
+	 * Parse the args and generate the shard
+	 *
+	 * @return the process exit code
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		ShardedBeanGenerator generator;
+		try {
+			generator = parse(args);
+		} catch (JTestException e) {
+			err.println(e.getMessage());
+			err.println(USAGE);
+			return 2;
+		}
+		try {
+			List<File> files = generator.generate();
+			for (File file : files) {
+				out.println(file.getAbsolutePath());
+			}
+			return 0;
+		} catch (RuntimeException e) {
+			e.printStackTrace(err);
+			return 1;
+		}
+	}
+
+	static ShardedBeanGenerator parse(String[] args) {
+		ShardedBeanGenerator generator = new ShardedBeanGenerator();
+		int shard = 0;
+		int shards = 1;
+		boolean haveClass = false;
+		boolean haveCount = false;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length) {
+				throw new JTestException("Missing value for %s", arg);
+			}
+			String val = args[++i];
+			if ("--class".equals(arg)) {
+				generator.beanClass(loadClass(val));
+				haveClass = true;
+			} else if ("--seed".equals(arg)) {
+				generator.seed(parseLong(arg, val));
+			} else if ("--count".equals(arg)) {
+				generator.count(parseLong(arg, val));
+				haveCount = true;
+			} else if ("--shard".equals(arg)) {
+				shard = parseInt(arg, val);
+			} else if ("--shards".equals(arg)) {
+				shards = parseInt(arg, val);
+			} else if ("--threads".equals(arg)) {
+				int threads = parseInt(arg, val);
+				if (threads < 1) {
+					throw new JTestException("--threads must be at least 1 but was %d", threads);
+				}
+				generator.threads(threads);
+			} else if ("--out".equals(arg)) {
+				generator.outputDir(new File(val));
+			} else if ("--format".equals(arg)) {
+				generator.format(BeanFileFormats.forName(val));
+			} else {
+				throw new JTestException("Unknown option %s", arg);
+			}
+		}
+		if (!haveClass || !haveCount) {
+			throw new JTestException("--class and --count are required");
+		}
+		if (shards < 1) {
+			throw new JTestException("--shards must be at least 1 but was %d", shards);
+		}
+		if (shard < 0 || shard >= shards) {
+			throw new JTestException("--shard must be from 0 to %d but was %d", shards - 1, shard);
+		}
+		return generator.shard(shard, shards);
+	}
+
+	private static long parseLong(String arg, String val) {
+		try {
+			return Long.parseLong(val);
+		} catch (NumberFormatException e) {
+			throw new JTestException("Expected a number for %s but was '%s'", arg, val);
+		}
+	}
+
+	private static int parseInt(String arg, String val) {
+		try {
+			return Integer.parseInt(val);
+		} catch (NumberFormatException e) {
+			throw new JTestException("Expected a whole number no larger than %d for %s but was '%s'", Integer.MAX_VALUE, arg, val);
+		}
+	}
+
+	private static Class<?> loadClass(String name) {
+		try {
+			return Class.forName(name, true, Thread.currentThread().getContextClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new JTestException("Can't find bean class '%s'", name);
+		}
+	}
+}
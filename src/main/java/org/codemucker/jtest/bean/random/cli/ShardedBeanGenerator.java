@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codemucker.jtest.JTestException;
+import org.codemucker.jtest.ProjectLayouts;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+
+/**
+ * Generates one shard of a seeded dataset of beans to files. The dataset is the beans at indexes 0 to count-1 of the
+ * sequence for the seed (see {@link BeanRandom#generateAt(Class, long, long)}), split into equal contiguous shards. Each
+ * bean only depends on the seed and its index, so the union of all the shards is the same whatever the number of shards,
+ * JVMs or threads used to generate them.
+ *
+ * <p>
+ * Within a shard the work is split into one part per thread, each written to its own file, named so the files sort in
+ * index order.
+ * </p>
+ */
+public class ShardedBeanGenerator {
+
+	private Class<?> beanClass;
+	private long seed;
+	private long count;
+	private int shardIndex = 0;
+	private int shardCount = 1;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private File outputDir;
+	private BeanFileFormat format = BeanFileFormats.TEXT;
+	private RandomOptions options = new RandomOptions();
+
+	public ShardedBeanGenerator beanClass(Class<?> beanClass) {
+		this.beanClass = beanClass;
+		return this;
+	}
+
+	public ShardedBeanGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * The total number of beans across all shards
+	 */
+	public ShardedBeanGenerator count(long count) {
+		this.count = count;
+		return this;
+	}
+
+	/**
+	 * Which shard to generate, out of how many
+	 */
+	public ShardedBeanGenerator shard(int shardIndex, int shardCount) {
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		return this;
+	}
+
+	public ShardedBeanGenerator threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Where to write the files. Defaults to 'bean-data/[bean class name]' under the project's output dir
+	 */
+	public ShardedBeanGenerator outputDir(File outputDir) {
+		this.outputDir = outputDir;
+		return this;
+	}
+
+	public ShardedBeanGenerator format(BeanFileFormat format) {
+		this.format = format;
+		return this;
+	}
+
+	public ShardedBeanGenerator options(RandomOptions options) {
+		this.options = options;
+		return this;
+	}
+
+	/**
+	 * The index of the first bean in the given shard. The last shard ends at the total count
+	 */
+	public static long shardStart(long count, int shardIndex, int shardCount) {
+		// split as evenly as possible without overflowing on large counts
+		long base = count / shardCount;
+		long remainder = count % shardCount;
+		return base * shardIndex + Math.min(shardIndex, remainder);
+	}
+
+	/**
+	 * Generate this shard's beans
+	 *
+	 * @return the files written, in index order
+	 */
+	public List<File> generate() {
+		checkArgs();
+		File dir = outputDir != null ? outputDir : new File(new File(ProjectLayouts.getDefaultResolver().getBaseOutputDir(), "bean-data"), beanClass.getName());
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new JTestException("Couldn't create output dir " + dir.getAbsolutePath());
+		}
+		long from = shardStart(count, shardIndex, shardCount);
+		long to = shardStart(count, shardIndex + 1, shardCount);
+		int parts = (int) Math.max(1, Math.min(threads, to - from));
+
+		final BeanRandom random = new BeanRandom(options);
+		ExecutorService executor = Executors.newFixedThreadPool(parts);
+		try {
+			List<File> files = new ArrayList<File>();
+			List<Future<File>> results = new ArrayList<Future<File>>();
+			for (int part = 0; part < parts; part++) {
+				final long partFrom = from + shardStart(to - from, part, parts);
+				final long partTo = from + shardStart(to - from, part + 1, parts);
+				final File file = new File(dir, String.format("%s-shard-%05d-of-%05d-part-%05d.%s", beanClass.getSimpleName(), shardIndex, shardCount, part, format.getExtension()));
+				files.add(file);
+				results.add(executor.submit(new Callable<File>() {
+					@Override
+					public File call() throws IOException {
+						writePart(random, file, partFrom, partTo);
+						return file;
+					}
+				}));
+			}
+			for (Future<File> result : results) {
+				result.get();
+			}
+			return files;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JTestException("Interrupted generating beans", e);
+		} catch (ExecutionException e) {
+			throw new JTestException("Error generating beans", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void writePart(BeanRandom random, File file, long from, long to) throws IOException {
+		BeanFileWriter writer = format.open(file, beanClass);
+		try {
+			for (long i = from; i < to; i++) {
+				writer.write(random.generateAt(beanClass, seed, i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void checkArgs() {
+		if (beanClass == null) {
+			throw new JTestException("No bean class set");
+		}
+		if (count < 0) {
+			throw new JTestException("Count must not be negative, but was %d", count);
+		}
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new JTestException("Invalid shard %d of %d, expect 0 <= shard < shards", shardIndex, shardCount);
+		}
+		if (threads < 1) {
+			throw new JTestException("Threads must be at least 1, but was %d", threads);
+		}
+	}
+}
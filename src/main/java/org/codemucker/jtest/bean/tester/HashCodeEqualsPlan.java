@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.tester;
+
+import static org.codemucker.jtest.ReflectionUtils.invokeCtorWith;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codemucker.jtest.bean.BeanDefinition;
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.CtorArgDefinition;
+import org.codemucker.jtest.bean.CtorDefinition;
+import org.codemucker.jtest.bean.CtorExtractor;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyDefinition;
+
+/**
+ * Everything the {@link HashCodeEqualsTester} needs to know about a bean class, worked out once: the ctors and their
+ * compiled invokers, which ctor args map to which properties, the ctor used to test properties and the properties in
+ * the order they are checked. Only the random values differ between checks of the same class.
+ *
+ * <p>
+ * Plans are cached JVM wide, keyed like the {@link org.codemucker.jtest.bean.BeanDefinitionCache} by the class and the
+ * fingerprint of the options used to extract it. Plans are immutable and shared between threads.
+ * </p>
+ */
+final class HashCodeEqualsPlan {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final MethodType CTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	private static final ClassValue<ConcurrentMap<Object, HashCodeEqualsPlan>> PLANS_BY_TYPE = new ClassValue<ConcurrentMap<Object, HashCodeEqualsPlan>>() {
+		@Override
+		protected ConcurrentMap<Object, HashCodeEqualsPlan> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Object, HashCodeEqualsPlan>(4, 0.75f, 1);
+		}
+	};
+
+	private final Class<?> beanClass;
+	private final CtorPlan[] ctors;
+	// null if the bean has no ctors
+	private final CtorPlan propertiesCtor;
+	private final PropertyDefinition[] properties;
+
+	private HashCodeEqualsPlan(Class<?> beanClass, BeanDefinition def, Collection<CtorDefinition> ctorDefs) {
+		this.beanClass = beanClass;
+		this.ctors = new CtorPlan[ctorDefs.size()];
+		CtorPlan noArgCtor = null;
+		CtorPlan shortestCtor = null;
+		int i = 0;
+		for (CtorDefinition ctorDef : ctorDefs) {
+			CtorPlan ctor = new CtorPlan(def, ctorDef);
+			ctors[i++] = ctor;
+			if (ctor.args.length == 0 && noArgCtor == null) {
+				noArgCtor = ctor;
+			}
+			if (shortestCtor == null || shortestCtor.args.length > ctor.args.length) {
+				shortestCtor = ctor;
+			}
+		}
+		this.propertiesCtor = noArgCtor != null ? noArgCtor : shortestCtor;
+
+		Collection<PropertyDefinition> props = def.getProperties();
+		this.properties = props.toArray(new PropertyDefinition[props.size()]);
+	}
+
+	/**
+	 * Return the plan for the given class, building it with the given extractors if it's not already cached
+	 */
+	static HashCodeEqualsPlan get(Class<?> beanClass, PropertiesExtractor extractor, CtorExtractor ctorExtractor) {
+		Object fingerprint = extractor.getOptions().getFingerprint();
+		if (fingerprint == null) {
+			// can't tell which options this was built for, so can't be shared
+			return new HashCodeEqualsPlan(beanClass, extractor.extractBeanDefWithCtor(beanClass), ctorExtractor.extractCtors(beanClass));
+		}
+		ConcurrentMap<Object, HashCodeEqualsPlan> plans = PLANS_BY_TYPE.get(beanClass);
+		HashCodeEqualsPlan plan = plans.get(fingerprint);
+		if (plan == null) {
+			plan = new HashCodeEqualsPlan(beanClass, extractor.extractBeanDefWithCtor(beanClass), ctorExtractor.extractCtors(beanClass));
+			HashCodeEqualsPlan existing = plans.putIfAbsent(fingerprint, plan);
+			if (existing != null) {
+				plan = existing;
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Drop all cached plans for the given type
+	 */
+	static void clear(Class<?> beanClass) {
+		PLANS_BY_TYPE.remove(beanClass);
+	}
+
+	Class<?> getBeanClass() {
+		return beanClass;
+	}
+
+	CtorPlan[] getCtors() {
+		return ctors;
+	}
+
+	/**
+	 * The ctor to create beans with when testing properties, the no arg one if there is one, else the one with the
+	 * fewest args
+	 *
+	 * @throws BeanException if the bean has no ctors
+	 */
+	CtorPlan getPropertiesCtor() {
+		if (propertiesCtor == null) {
+			throw new BeanException("No ctor found for %s", beanClass.getName());
+		}
+		return propertiesCtor;
+	}
+
+	PropertyDefinition[] getProperties() {
+		return properties;
+	}
+
+	private static MethodHandle unreflectCtor(Constructor<?> ctor) {
+		try {
+			return LOOKUP.unreflectConstructor(ctor).asSpreader(Object[].class, ctor.getParameterTypes().length).asType(CTOR_TYPE);
+		} catch (IllegalAccessException e) {
+			// fall back to a reflective invoke, which raises the appropriate error
+			return null;
+		}
+	}
+
+	static final class CtorPlan {
+		private final Constructor<?> ctor;
+		private final MethodHandle ctorHandle;
+		private final CtorArgDefinition[] args;
+		// the property each named arg maps to, null for unnamed args or when there is no such property
+		private final PropertyDefinition[] argProperties;
+		private final boolean[] modifiesEquals;
+		private String description;
+
+		private CtorPlan(BeanDefinition def, CtorDefinition ctorDef) {
+			this.ctor = ctorDef.getCtor();
+			this.ctorHandle = unreflectCtor(ctor);
+			this.args = ctorDef.getArgs().toArray(new CtorArgDefinition[ctorDef.getNumArgs()]);
+			this.argProperties = new PropertyDefinition[args.length];
+			this.modifiesEquals = new boolean[args.length];
+			for (int i = 0; i < args.length; i++) {
+				CtorArgDefinition arg = args[i];
+				if (arg.isNamed()) {
+					argProperties[i] = def.getProperty(arg.getName());
+				}
+				modifiesEquals[i] = !arg.isNamed() || def.hasNonIgnoredProperty(arg.getName());
+			}
+		}
+
+		Constructor<?> getCtor() {
+			return ctor;
+		}
+
+		int getNumArgs() {
+			return args.length;
+		}
+
+		CtorArgDefinition getArg(int position) {
+			return args[position];
+		}
+
+		/**
+		 * The property the named arg at the given position sets, null if the arg is unnamed or there's no such property
+		 */
+		PropertyDefinition getArgProperty(int position) {
+			return argProperties[position];
+		}
+
+		/**
+		 * If changing the arg at the given position is expected to make the created beans unequal
+		 */
+		boolean isModifiesEquals(int position) {
+			return modifiesEquals[position];
+		}
+
+		/**
+		 * The ctor's generic signature, only built when needed for a failure message
+		 */
+		String getDescription() {
+			String s = description;
+			if (s == null) {
+				s = ctor.toGenericString();
+				description = s;
+			}
+			return s;
+		}
+
+		Object newInstance(Object[] ctorArgs) {
+			if (ctorHandle == null) {
+				return invokeCtorWith(ctor, ctorArgs);
+			}
+			try {
+				return (Object) ctorHandle.invokeExact(ctorArgs);
+			} catch (Throwable t) {
+				throw new BeanException("Error invoking ctor for type %s with args %s", t, ctor.getDeclaringClass().getName(), Arrays.deepToString(ctorArgs));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return getDescription();
+		}
+	}
+}
@@ -16,9 +16,13 @@
 package org.codemucker.jtest.bean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
@@ -108,4 +112,91 @@ public class PropertiesExtractorTest {
 		
 		assertEquals(2, def.getProperties().size());
 	}
+
+	@Test
+	public void test_definitions_shared_between_extractors_with_same_options() {
+		BeanDefinition def1 = new PropertiesExtractor().extractBeanDef(TstBeanParentPropertiesIncluded.class);
+		BeanDefinition def2 = new PropertiesExtractor().extractBeanDef(TstBeanParentPropertiesIncluded.class);
+		assertSame(def1, def2);
+
+		PropertiesExtractor extractor = new PropertiesExtractor();
+		extractor.getOptions().ignoreProperty(TstBeanParentPropertiesIncluded.class, "fieldA");
+		BeanDefinition def3 = extractor.extractBeanDef(TstBeanParentPropertiesIncluded.class);
+		assertNotSame(def1, def3);
+		assertTrue(def3.getProperty("fieldA").isIgnore());
+	}
+
+	@Test
+	public void test_cached_definitions_are_read_only() {
+		BeanDefinition def = new PropertiesExtractor().extractBeanDef(TstBeanParentPropertiesIncluded.class);
+		assertTrue(def.isFrozen());
+		try {
+			def.getProperty("fieldA").setIgnore(true);
+			fail("expected shared property definition to be read only");
+		} catch (BeanException e) {
+			// expected
+		}
+		try {
+			def.getProperties().clear();
+			fail("expected shared properties to be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertFalse(def.getProperty("fieldA").isIgnore());
+	}
+
+	@Test
+	public void test_options_subclasses_not_shared() {
+		BeanOptions includeAll = new BeanOptions() {
+		};
+		BeanOptions excludeA = new BeanOptions() {
+			@Override
+			public boolean isIncludeProperty(Class<?> beanClass, String propertyName, Class<?> propertyType) {
+				return !"fieldA".equals(propertyName);
+			}
+		};
+		assertNotNull(includeAll.getFingerprint());
+		assertFalse(includeAll.getFingerprint().equals(new BeanOptions().getFingerprint()));
+		assertNull(excludeA.getFingerprint());
+
+		BeanDefinition def = new PropertiesExtractor(excludeA).extractBeanDef(TstBeanParentPropertiesIncluded.class);
+		assertTrue(def.getProperty("fieldA").isIgnore());
+		assertFalse(def.isFrozen());
+		assertNotSame(def, new PropertiesExtractor(excludeA).extractBeanDef(TstBeanParentPropertiesIncluded.class));
+		assertFalse(new PropertiesExtractor(includeAll).extractBeanDef(TstBeanParentPropertiesIncluded.class).getProperty("fieldA").isIgnore());
+	}
+
+	@Test
+	public void test_ignore_collections_are_read_only() {
+		BeanOptions options = new BeanOptions().ignoreProperty(TstBeanParentPropertiesIncluded.class, "fieldA");
+		try {
+			options.getIgnoreProperties().add("fieldB");
+			fail("expected ignore properties to be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			options.getIgnorePropertiesOnClass().get(TstBeanParentPropertiesIncluded.class.getName()).add("fieldB");
+			fail("expected ignore properties on class to be read only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void test_accessor_reads_and_writes_private_fields_when_accessible() {
+		PropertiesExtractor tester = new PropertiesExtractor();
+		tester.getOptions().extractFields(true).makeAccessible(true);
+
+		PropertyDefinition p = tester.extractBeanDef(TstBeanAnnotations.class).getProperty("noMethods");
+		PropertyAccessor accessor = p.getAccessor();
+		// access is granted on the accessor's own copy, never on the shared field
+		assertFalse(p.getField().isAccessible());
+		assertTrue(accessor.canRead());
+		assertTrue(accessor.canWrite());
+
+		TstBeanAnnotations bean = new TstBeanAnnotations();
+		accessor.setValue(bean, "myVal");
+		assertEquals("myVal", accessor.getValue(bean));
+	}
 }
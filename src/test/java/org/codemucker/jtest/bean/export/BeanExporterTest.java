@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+import org.junit.Test;
+
+public class BeanExporterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void test_json_lines() throws IOException {
+		TstBeanExport child = new TstBeanExport();
+		child.setName("caf\u00e9");
+		TstBeanExport bean = new TstBeanExport();
+		bean.setName("say \"hi\"\n");
+		bean.setCount(-42);
+		bean.setRatio(0.5);
+		bean.setFlag(true);
+		bean.setTags(Arrays.asList("a", null));
+		bean.setChild(child);
+
+		List<String> lines = export(BeanExporter.jsonLines(TstBeanExport.class), bean, new TstBeanExport());
+		assertEquals(Arrays.asList(
+		        "{\"child\":{\"child\":null,\"count\":0,\"flag\":false,\"name\":\"caf\u00e9\",\"ratio\":0.0,\"tags\":null},\"count\":-42,\"flag\":true,\"name\":\"say \\\"hi\\\"\\n\",\"ratio\":0.5,\"tags\":[\"a\",null]}",
+		        "{\"child\":null,\"count\":0,\"flag\":false,\"name\":null,\"ratio\":0.0,\"tags\":null}"), lines);
+	}
+
+	@Test
+	public void test_csv() throws IOException {
+		TstBeanExport bean = new TstBeanExport();
+		bean.setName("a,\"b\"");
+		bean.setCount(Integer.MIN_VALUE);
+		bean.setTags(Arrays.asList("x"));
+
+		List<String> lines = export(BeanExporter.csv(TstBeanExport.class), bean);
+		assertEquals(Arrays.asList("child,count,flag,name,ratio,tags", ",-2147483648,false,\"a,\"\"b\"\"\",0.0,\"[\"\"x\"\"]\""), lines);
+	}
+
+	@Test
+	public void test_many_beans_span_buffers() throws IOException {
+		RandomOptions options = new RandomOptions();
+		options.seed(7);
+		options.failOnRecursiveBeanCreation(false);
+		BeanRandom random = new BeanRandom(options);
+		BeanExporter exporter = BeanExporter.jsonLines(TstBeanExport.class).bufferSize(64);
+		BeanExporter.ExportWriter writer = exporter.open();
+		try {
+			for (int i = 0; i < 500; i++) {
+				TstBeanExport bean = random.populate(TstBeanExport.class);
+				bean.setChild(null);
+				writer.write(bean);
+			}
+		} finally {
+			writer.close();
+		}
+		assertEquals(500, writer.getCount());
+		List<String> lines = Files.readAllLines(writer.getFile().toPath(), UTF8);
+		assertEquals(500, lines.size());
+		for (String line : lines) {
+			if (!line.startsWith("{\"child\":null,\"count\":") || !line.endsWith("]}")) {
+				fail("unexpected line " + line);
+			}
+		}
+	}
+
+	@Test
+	public void test_cycle_fails() throws IOException {
+		TstBeanExport bean = new TstBeanExport();
+		bean.setChild(bean);
+		BeanExporter.ExportWriter writer = BeanExporter.jsonLines(TstBeanExport.class).open();
+		try {
+			writer.write(bean);
+			fail("expected failure on cyclic bean");
+		} catch (BeanException e) {
+			// expected
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void test_cyclic_collection_fails() throws IOException {
+		List cyclic = new ArrayList();
+		cyclic.add(cyclic);
+		TstBeanExport bean = new TstBeanExport();
+		bean.setTags(cyclic);
+		BeanExporter.ExportWriter writer = BeanExporter.jsonLines(TstBeanExport.class).open();
+		try {
+			writer.write(bean);
+			fail("expected failure on cyclic collection");
+		} catch (BeanException e) {
+			// expected
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Test
+	public void test_non_finite_numbers() throws IOException {
+		TstBeanExport bean = new TstBeanExport();
+		bean.setRatio(Double.NaN);
+		assertEquals(Arrays.asList("{\"child\":null,\"count\":0,\"flag\":false,\"name\":null,\"ratio\":null,\"tags\":null}"),
+		        export(BeanExporter.jsonLines(TstBeanExport.class), bean));
+
+		bean.setRatio(Double.POSITIVE_INFINITY);
+		assertEquals(Arrays.asList("child,count,flag,name,ratio,tags", ",0,false,,,"), export(BeanExporter.csv(TstBeanExport.class), bean));
+	}
+
+	private static List<String> export(BeanExporter exporter, Object... beans) throws IOException {
+		BeanExporter.ExportWriter writer = exporter.open();
+		try {
+			for (Object bean : beans) {
+				writer.write(bean);
+			}
+		} finally {
+			writer.close();
+		}
+		File file = writer.getFile();
+		return Files.readAllLines(file.toPath(), UTF8);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.codemucker.jtest.TestHelper;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+import org.codemucker.jtest.bean.random.SizeDistribution;
+import org.junit.Test;
+
+public class BeanFixtureCacheTest {
+
+	@Test
+	public void test_reuses_cached_dataset() throws IOException {
+		BeanFixtureCache cache = new BeanFixtureCache(new TestHelper().createTempDir());
+
+		ColumnarBeanReader<TstBeanColumnar> first = cache.get(TstBeanColumnar.class, 42, 100);
+		File file = first.getFile();
+		long modified = file.lastModified();
+		ColumnarBeanReader<TstBeanColumnar> second = cache.get(TstBeanColumnar.class, 42, 100);
+		assertEquals(file, second.getFile());
+		assertEquals(modified, second.getFile().lastModified());
+
+		TstBeanColumnar expect = new BeanRandom().generateAt(TstBeanColumnar.class, 42, 99);
+		assertEquals(expect.getL(), second.get(99).getL());
+		assertEquals(expect.getName(), second.get(99).getName());
+	}
+
+	@Test
+	public void test_key_includes_seed_count_and_options() throws IOException {
+		BeanFixtureCache cache = new BeanFixtureCache(new TestHelper().createTempDir());
+		File file = cache.get(TstBeanColumnar.class, 1, 10).getFile();
+
+		assertFalse(file.equals(cache.get(TstBeanColumnar.class, 2, 10).getFile()));
+		assertFalse(file.equals(cache.get(TstBeanColumnar.class, 1, 11).getFile()));
+		RandomOptions options = new RandomOptions();
+		options.stringLength(SizeDistribution.fixed(3));
+		File other = cache.get(TstBeanColumnar.class, 1, 10, options).getFile();
+		assertFalse(file.equals(other));
+		assertEquals(3, cache.get(TstBeanColumnar.class, 1, 10, options).get(0).getName().length());
+		assertEquals(file, cache.get(TstBeanColumnar.class, 1, 10).getFile());
+	}
+
+	@Test
+	public void test_stale_entries_are_deleted() throws IOException {
+		File dir = new TestHelper().createTempDir();
+		BeanFixtureCache cache = new BeanFixtureCache(dir);
+		File other = cache.get(TstBeanColumnar.class, 1, 20).getFile();
+
+		// as left by an earlier version of the bean class
+		File oldVersion = new File(dir, TstBeanColumnar.class.getName() + "-000000000000-1-10-abc.col");
+		assertTrue(oldVersion.createNewFile());
+		File file = cache.get(TstBeanColumnar.class, 1, 10).getFile();
+		assertFalse(oldVersion.exists());
+		assertTrue(file.exists());
+		assertTrue(other.exists());
+
+		// regenerating the same dataset with other options replaces it
+		RandomOptions options = new RandomOptions();
+		options.stringLength(SizeDistribution.fixed(3));
+		File replacement = cache.get(TstBeanColumnar.class, 1, 10, options).getFile();
+		assertFalse(file.exists());
+		assertTrue(replacement.exists());
+		assertTrue(other.exists());
+	}
+}
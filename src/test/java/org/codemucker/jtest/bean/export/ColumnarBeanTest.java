@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codemucker.jtest.TestHelper;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.codemucker.jtest.bean.random.RandomOptions;
+import org.junit.Test;
+
+public class ColumnarBeanTest {
+
+	private final TestHelper helper = new TestHelper();
+
+	@Test
+	public void test_round_trip() throws IOException {
+		RandomOptions options = new RandomOptions();
+		options.seed(3);
+		List<TstBeanColumnar> beans = new BeanRandom(options).populateMany(TstBeanColumnar.class, 1000);
+		beans.get(7).setBoxed(null);
+		beans.get(8).setName(null);
+		beans.get(9).setColour(null);
+
+		File file = helper.createTempFileWithName("beans.col");
+		ColumnarBeanWriter<TstBeanColumnar> writer = new ColumnarBeanWriter<TstBeanColumnar>(file, TstBeanColumnar.class);
+		writer.writeAll(beans);
+		writer.close();
+
+		ColumnarBeanReader<TstBeanColumnar> reader = ColumnarBeanReader.open(file, TstBeanColumnar.class);
+		assertEquals(1000, reader.size());
+		assertEquals(Arrays.asList("b", "boxed", "c", "colour", "f", "flag", "i", "l", "name"), reader.getColumnNames());
+
+		TstBeanColumnar view = new TstBeanColumnar();
+		for (int row = 0; row < beans.size(); row++) {
+			assertSame(beans.get(row), reader.get(row));
+			assertSame(beans.get(row), reader.read(row, view));
+		}
+		assertNull(reader.get(7).getBoxed());
+		assertNull(reader.get(8).getName());
+		assertNull(reader.get(9).getColour());
+		assertNull(reader.get(0).getNotStored());
+	}
+
+	@Test
+	public void test_column_access() throws IOException {
+		TstBeanColumnar bean = new TstBeanColumnar();
+		bean.setI(-5);
+		bean.setFlag(true);
+		bean.setName("x");
+		bean.setColour(TstBeanColumnar.Colour.BLUE);
+
+		File file = helper.createTempFileWithName("beans.col");
+		ColumnarBeanWriter<TstBeanColumnar> writer = new ColumnarBeanWriter<TstBeanColumnar>(file, TstBeanColumnar.class);
+		writer.write(bean);
+		writer.write(new TstBeanColumnar());
+		writer.close();
+
+		ColumnarBeanReader<TstBeanColumnar> reader = ColumnarBeanReader.open(file, TstBeanColumnar.class);
+		assertEquals(-5, reader.getColumn("i").getLong(0));
+		assertEquals(0, reader.getColumn("i").getLong(1));
+		assertTrue(reader.getColumn("flag").getBoolean(0));
+		assertFalse(reader.getColumn("flag").getBoolean(1));
+		assertEquals("x", reader.getColumn("name").getString(0));
+		assertTrue(reader.getColumn("name").isNull(1));
+		assertTrue(reader.getColumn("boxed").isNull(0));
+		assertEquals("BLUE", reader.getColumn("colour").getString(0));
+		assertEquals(TstBeanColumnar.Colour.BLUE, reader.getColumn("colour").getValue(0));
+	}
+
+	private static void assertSame(TstBeanColumnar expect, TstBeanColumnar actual) {
+		assertEquals(expect.isFlag(), actual.isFlag());
+		assertEquals(expect.getB(), actual.getB());
+		assertEquals(expect.getC(), actual.getC());
+		assertEquals(expect.getI(), actual.getI());
+		assertEquals(expect.getL(), actual.getL());
+		assertEquals(expect.getF(), actual.getF(), 0);
+		assertEquals(expect.getBoxed(), actual.getBoxed());
+		assertEquals(expect.getName(), actual.getName());
+		assertEquals(expect.getColour(), actual.getColour());
+	}
+}
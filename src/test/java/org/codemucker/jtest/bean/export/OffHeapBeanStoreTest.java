@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.codemucker.jtest.TestHelper;
+import org.codemucker.jtest.bean.BeanOptions;
+import org.codemucker.jtest.bean.random.BeanRandom;
+import org.junit.Test;
+
+public class OffHeapBeanStoreTest {
+
+	public static interface ColumnarView {
+		int getI();
+
+		long getL();
+
+		boolean isFlag();
+
+		String getName();
+
+		TstBeanColumnar.Colour getColour();
+
+		Double getBoxed();
+	}
+
+	@Test
+	public void test_generate_and_read_back() {
+		// spans more than one chunk
+		int count = 70000;
+		OffHeapBeanStore<TstBeanColumnar> store = OffHeapBeanStore.generate(TstBeanColumnar.class, 5, count);
+		assertEquals(count, store.size());
+		assertTrue(store.getOffHeapBytes() > 0);
+
+		BeanRandom random = new BeanRandom();
+		OffHeapBeanStore<TstBeanColumnar>.View<ColumnarView> view = store.newView(ColumnarView.class);
+		TstBeanColumnar reused = new TstBeanColumnar();
+		for (long row : new long[] { 0, 1, 65535, 65536, count - 1 }) {
+			TstBeanColumnar expect = random.generateAt(TstBeanColumnar.class, 5, row);
+			TstBeanColumnar actual = store.get(row);
+			assertEquals(expect.getI(), actual.getI());
+			assertEquals(expect.getC(), actual.getC());
+			assertEquals(expect.getF(), actual.getF(), 0);
+			assertEquals(expect.getName(), actual.getName());
+			assertEquals(expect.getColour(), actual.getColour());
+			assertEquals(expect.getBoxed(), store.read(row, reused).getBoxed());
+
+			ColumnarView v = view.moveTo(row);
+			assertEquals(expect.getI(), v.getI());
+			assertEquals(expect.getL(), v.getL());
+			assertEquals(expect.isFlag(), v.isFlag());
+			assertEquals(expect.getName(), v.getName());
+			assertEquals(expect.getColour(), v.getColour());
+			assertEquals(expect.getL(), store.getColumn("l").getLong(row));
+		}
+		store.close();
+	}
+
+	@Test
+	public void test_nulls() {
+		OffHeapBeanStore<TstBeanColumnar> store = new OffHeapBeanStore<TstBeanColumnar>(TstBeanColumnar.class);
+		store.add(new TstBeanColumnar());
+		TstBeanColumnar bean = store.get(0);
+		assertNull(bean.getBoxed());
+		assertNull(bean.getName());
+		assertNull(bean.getColour());
+		assertTrue(store.getColumn("boxed").isNull(0));
+		assertNull(store.newView(ColumnarView.class).moveTo(0).getName());
+		store.close();
+	}
+
+	@Test
+	public void test_column_reads_are_bounds_checked() {
+		OffHeapBeanStore<TstBeanColumnar> store = OffHeapBeanStore.generate(TstBeanColumnar.class, 1, 3);
+		OffHeapBeanStore.Column column = store.getColumn("l");
+		column.getLong(2);
+		// inside the first chunk, but past the last row
+		assertOutOfBounds(column, 3);
+		assertOutOfBounds(column, -1);
+		store.close();
+	}
+
+	@Test
+	public void test_close_releases_rows_and_file() {
+		File dir = new TestHelper().createTempDir();
+		OffHeapBeanStore<TstBeanColumnar> store = new OffHeapBeanStore<TstBeanColumnar>(TstBeanColumnar.class, new BeanOptions(), dir);
+		store.add(new BeanRandom().generateAt(TstBeanColumnar.class, 1, 0));
+		assertEquals(1, dir.listFiles().length);
+
+		OffHeapBeanStore.Column column = store.getColumn("l");
+		store.close();
+		assertEquals(0, store.size());
+		assertOutOfBounds(column, 0);
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	private static void assertOutOfBounds(OffHeapBeanStore.Column column, long row) {
+		boolean thrown = false;
+		try {
+			column.getLong(row);
+		} catch (IndexOutOfBoundsException e) {
+			thrown = true;
+		}
+		assertTrue("expected row " + row + " to be out of bounds", thrown);
+	}
+}
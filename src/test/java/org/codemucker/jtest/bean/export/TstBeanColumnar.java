@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.export;
+
+import java.util.List;
+
+public class TstBeanColumnar {
+
+	public static enum Colour {
+		RED, GREEN, BLUE
+	}
+
+	private boolean flag;
+	private byte b;
+	private char c;
+	private int i;
+	private long l;
+	private float f;
+	private Double boxed;
+	private String name;
+	private Colour colour;
+	private List<String> notStored;
+
+	public boolean isFlag() {
+		return flag;
+	}
+
+	public void setFlag(boolean flag) {
+		this.flag = flag;
+	}
+
+	public byte getB() {
+		return b;
+	}
+
+	public void setB(byte b) {
+		this.b = b;
+	}
+
+	public char getC() {
+		return c;
+	}
+
+	public void setC(char c) {
+		this.c = c;
+	}
+
+	public int getI() {
+		return i;
+	}
+
+	public void setI(int i) {
+		this.i = i;
+	}
+
+	public long getL() {
+		return l;
+	}
+
+	public void setL(long l) {
+		this.l = l;
+	}
+
+	public float getF() {
+		return f;
+	}
+
+	public void setF(float f) {
+		this.f = f;
+	}
+
+	public Double getBoxed() {
+		return boxed;
+	}
+
+	public void setBoxed(Double boxed) {
+		this.boxed = boxed;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Colour getColour() {
+		return colour;
+	}
+
+	public void setColour(Colour colour) {
+		this.colour = colour;
+	}
+
+	public List<String> getNotStored() {
+		return notStored;
+	}
+
+	public void setNotStored(List<String> notStored) {
+		this.notStored = notStored;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codemucker.jtest.JTestException;
+import org.junit.Test;
+
+public class BeanLoadDriverTest {
+
+	@Test
+	public void test_histogram_percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertEquals(10000, histogram.getTotalCount());
+		assertEquals(1000, histogram.getMin());
+		assertEquals(10000000, histogram.getMax());
+		assertWithin(5000000, histogram.getValueAtPercentile(50));
+		assertWithin(9900000, histogram.getValueAtPercentile(99));
+		assertWithin(9990000, histogram.getValueAtPercentile(99.9));
+		assertEquals(10000000, histogram.getValueAtPercentile(100));
+
+		LatencyHistogram other = new LatencyHistogram();
+		other.record(Long.MAX_VALUE);
+		histogram.add(other);
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+		assertEquals(10001, histogram.getTotalCount());
+	}
+
+	private static void assertWithin(long expect, long actual) {
+		assertTrue("expected " + expect + " but was " + actual, actual >= expect && actual <= expect * 1.01);
+	}
+
+	@Test
+	public void test_stall_counts_against_every_delayed_call() {
+		final AtomicInteger calls = new AtomicInteger();
+		BeanLoadDriver.Result result = new BeanLoadDriver<TstBeanSetters>(new BeanRandom(), TstBeanSetters.class, new BeanSink<TstBeanSetters>() {
+			@Override
+			public void accept(TstBeanSetters bean) {
+				int n = calls.incrementAndGet();
+				if (n == 10) {
+					sleep(100);
+				}
+				if (n % 50 == 0) {
+					throw new RuntimeException("failed call");
+				}
+				if (n == 75) {
+					throw new AssertionError("failed check");
+				}
+			}
+		}).rate(1000).count(200).duration(1, TimeUnit.MINUTES).run();
+
+		assertEquals(200, result.getCount());
+		assertEquals(5, result.getErrors());
+		assertTrue(result.getLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+		// the calls scheduled during the stall all waited on it, not just the one which stalled
+		assertTrue(result.getLatency().getValueAtPercentile(75) >= TimeUnit.MILLISECONDS.toNanos(10));
+		assertTrue(result.getServiceTime().getValueAtPercentile(50) < TimeUnit.MILLISECONDS.toNanos(10));
+		assertTrue(result.getThroughput() > 0);
+	}
+
+	@Test
+	public void test_threads_share_the_rate() {
+		BeanLoadDriver.Result result = new BeanLoadDriver<TstBeanSetters>(new BeanRandom(), TstBeanSetters.class, new BeanSink<TstBeanSetters>() {
+			@Override
+			public void accept(TstBeanSetters bean) {
+			}
+		}).rate(2000).threads(4).duration(200, TimeUnit.MILLISECONDS).run();
+		// 400 calls scheduled, give or take the one on the boundary
+		assertTrue(result.toString(), Math.abs(result.getCount() - 400) <= 1);
+	}
+
+	@Test
+	public void test_fatal_sink_error_reported_as_sink_failure() {
+		try {
+			new BeanLoadDriver<TstBeanSetters>(new BeanRandom(), TstBeanSetters.class, new BeanSink<TstBeanSetters>() {
+				@Override
+				public void accept(TstBeanSetters bean) {
+					throw new OutOfMemoryError("out of memory");
+				}
+			}).count(10).run();
+			fail("expected exception");
+		} catch (JTestException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Sink failed"));
+			assertTrue(e.getCause() instanceof OutOfMemoryError);
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -17,14 +17,34 @@ package org.codemucker.jtest.bean.random;
 
 import static org.codemucker.jtest.TestUtils.sorted;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.codemucker.jtest.bean.BeanDefinition;
 import org.codemucker.jtest.bean.BeanException;
+import org.codemucker.jtest.bean.PropertiesExtractor;
+import org.codemucker.jtest.bean.PropertyDefinition;
 import org.codemucker.jtest.bean.TstBeanIgnoreProperty;
 import org.junit.Assert;
 import org.junit.Test;
@@ -52,6 +72,367 @@ public class BeanRandomTest {
 		assertNotNull(bean.getFieldB());
 	}
 
+	@Test
+	public void test_populate_many() {
+		BeanRandom tester = new BeanRandom();
+		List<TstBeanMultiArgCtor> beans = tester.populateMany(TstBeanMultiArgCtor.class, 100);
+		assertEquals(100, beans.size());
+		for (TstBeanMultiArgCtor bean : beans) {
+			assertNotNull(bean.getFieldA());
+			assertNotNull(bean.getFieldB());
+		}
+
+		TstBeanComplexProperty[] arr = tester.populateInto(TstBeanComplexProperty.class, new TstBeanComplexProperty[10]);
+		for (TstBeanComplexProperty bean : arr) {
+			assertNotNull(bean.getFieldComplex());
+		}
+	}
+
+	@Test
+	public void test_parallel_populate_is_deterministic() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().seed(42);
+
+		TstBeanSetters[] serial = tester.populateParallel(TstBeanSetters.class, new TstBeanSetters[1000], new ForkJoinPool(1));
+		// reseeding starts the series of calls again
+		tester.getOptions().seed(42);
+		TstBeanSetters[] parallel = tester.populateParallel(TstBeanSetters.class, new TstBeanSetters[1000], new ForkJoinPool(8));
+		for (int i = 0; i < serial.length; i++) {
+			assertEquals(serial[i].fieldToValues, parallel[i].fieldToValues);
+		}
+		assertFalse(serial[0].fieldToValues.equals(serial[1].fieldToValues));
+	}
+
+	@Test
+	public void test_parallel_populate_calls_differ() {
+		BeanRandom tester = new BeanRandom();
+		List<TstBeanSetters> first = tester.populateManyParallel(TstBeanSetters.class, 3);
+		List<TstBeanSetters> second = tester.populateManyParallel(TstBeanSetters.class, 3);
+		for (int i = 0; i < first.size(); i++) {
+			assertFalse(first.get(i).fieldToValues.equals(second.get(i).fieldToValues));
+		}
+	}
+
+	@Test
+	public void test_parallel_populate_seeds_custom_providers_per_bean() {
+		final RandomOptions options = new RandomOptions();
+		options.seed(42);
+		options.addProvider(String.class, new RandomGenerator<String>() {
+			@Override
+			public String generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+				return "custom" + options.getRandom().nextLong();
+			}
+		});
+		BeanRandom tester = new BeanRandom(options);
+
+		TstBeanKeyed[] serial = tester.populateParallel(TstBeanKeyed.class, new TstBeanKeyed[1000], new ForkJoinPool(1));
+		options.seed(42);
+		TstBeanKeyed[] parallel = tester.populateParallel(TstBeanKeyed.class, new TstBeanKeyed[1000], new ForkJoinPool(8));
+		for (int i = 0; i < serial.length; i++) {
+			assertEquals(serial[i].getName(), parallel[i].getName());
+			assertEquals(serial[i].getAa(), parallel[i].getAa());
+		}
+		assertFalse(serial[0].getName().equals(serial[1].getName()));
+	}
+
+	@Test
+	public void test_generate_at_index() {
+		BeanRandom tester1 = new BeanRandom();
+		BeanRandom tester2 = new BeanRandom();
+
+		TstBeanSetters bean5 = tester1.generateAt(TstBeanSetters.class, 42, 5);
+		TstBeanSetters bean3 = tester1.generateAt(TstBeanSetters.class, 42, 3);
+		assertEquals(bean3.fieldToValues, tester2.generateAt(TstBeanSetters.class, 42, 3).fieldToValues);
+		assertEquals(bean5.fieldToValues, tester2.generateAt(TstBeanSetters.class, 42, 5).fieldToValues);
+		assertFalse(bean3.fieldToValues.equals(bean5.fieldToValues));
+		assertFalse(bean3.fieldToValues.equals(tester2.generateAt(TstBeanSetters.class, 43, 3).fieldToValues));
+
+		TstBeanCollections col1 = tester1.generateAt(TstBeanCollections.class, 42, 1000000);
+		TstBeanCollections col2 = tester2.generateAt(TstBeanCollections.class, 42, 1000000);
+		assertEquals(col1.getList(), col2.getList());
+		assertEquals(col1.getMap(), col2.getMap());
+	}
+
+	@Test
+	public void test_generate_property_type_decided_per_property() {
+		final List<String> asked = new CopyOnWriteArrayList<String>();
+		RandomOptions options = new RandomOptions() {
+			@Override
+			public boolean isGeneratePropertyType(Object bean, String propertyName, Class<?> type, Type genericType) {
+				asked.add(((Class<?>) bean).getSimpleName() + "." + propertyName);
+				return !"fieldComplex".equals(propertyName) && super.isGeneratePropertyType(bean, propertyName, type, genericType);
+			}
+		};
+		BeanRandom tester = new BeanRandom(options);
+		assertNull(tester.populate(TstBeanComplexProperty.class).getFieldComplex());
+		assertTrue(asked.contains("TstBeanComplexProperty.fieldComplex"));
+	}
+
+	@Test
+	public void test_generate_at_keys_on_full_property_name() {
+		BeanRandom tester = new BeanRandom();
+		for (int i = 0; i < 10; i++) {
+			TstBeanKeyed bean = tester.generateAt(TstBeanKeyed.class, 42, i);
+			assertFalse(bean.getAa() == bean.getBB());
+		}
+	}
+
+	@Test
+	public void test_generate_at_routes_options_random_to_custom_providers() {
+		final RandomOptions options = new RandomOptions();
+		options.addProvider(String.class, new RandomGenerator<String>() {
+			@Override
+			public String generateRandom(Class beanClass, String propertyName, Class<?> propertyType, Type genericType) {
+				return "custom" + options.getRandom().nextLong();
+			}
+		});
+		BeanRandom tester1 = new BeanRandom(options);
+		BeanRandom tester2 = new BeanRandom(options);
+
+		String name = tester1.generateAt(TstBeanKeyed.class, 42, 7).getName();
+		// draws in between don't change the keyed values
+		options.getRandom().nextLong();
+		tester1.populate(TstBeanKeyed.class);
+		assertEquals(name, tester2.generateAt(TstBeanKeyed.class, 42, 7).getName());
+		assertFalse(name.equals(tester2.generateAt(TstBeanKeyed.class, 42, 8).getName()));
+	}
+
+	@Test
+	public void test_publisher_bounded_by_demand() throws Exception {
+		RandomOptions options = new RandomOptions();
+		options.seed(42);
+		BeanRandom tester = new BeanRandom(options);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final List<TstBeanSetters> received = new CopyOnWriteArrayList<TstBeanSetters>();
+			final CountDownLatch firstBatch = new CountDownLatch(3);
+			final CountDownLatch completed = new CountDownLatch(1);
+			final BeanFlow.Subscription[] subscription = new BeanFlow.Subscription[1];
+			final Throwable[] error = new Throwable[1];
+			tester.publisher(TstBeanSetters.class, 10, executor).subscribe(new BeanFlow.Subscriber<TstBeanSetters>() {
+				@Override
+				public void onSubscribe(BeanFlow.Subscription s) {
+					subscription[0] = s;
+					s.request(3);
+				}
+
+				@Override
+				public void onNext(TstBeanSetters bean) {
+					received.add(bean);
+					firstBatch.countDown();
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					error[0] = t;
+				}
+
+				@Override
+				public void onComplete() {
+					completed.countDown();
+				}
+			});
+			assertTrue(firstBatch.await(10, TimeUnit.SECONDS));
+			// nothing more without demand
+			Thread.sleep(50);
+			assertEquals(3, received.size());
+
+			subscription[0].request(100);
+			assertTrue(completed.await(10, TimeUnit.SECONDS));
+			assertEquals(10, received.size());
+			assertNull(error[0]);
+			for (int i = 0; i < received.size(); i++) {
+				assertEquals(tester.generateAt(TstBeanSetters.class, 42, i).fieldToValues, received.get(i).fieldToValues);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void test_publisher_signals_error_when_subscriber_throws() throws Exception {
+		BeanRandom tester = new BeanRandom();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final AtomicInteger received = new AtomicInteger();
+			final CountDownLatch failed = new CountDownLatch(1);
+			final Throwable[] error = new Throwable[1];
+			tester.publisher(TstBeanSetters.class, 10, executor).subscribe(new BeanFlow.Subscriber<TstBeanSetters>() {
+				@Override
+				public void onSubscribe(BeanFlow.Subscription s) {
+					s.request(10);
+				}
+
+				@Override
+				public void onNext(TstBeanSetters bean) {
+					if (received.incrementAndGet() == 2) {
+						throw new IllegalStateException("broken subscriber");
+					}
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					error[0] = t;
+					failed.countDown();
+				}
+
+				@Override
+				public void onComplete() {
+					fail("expected an error");
+				}
+			});
+			assertTrue(failed.await(10, TimeUnit.SECONDS));
+			assertEquals("broken subscriber", error[0].getMessage());
+			// nothing delivered after the failure
+			Thread.sleep(50);
+			assertEquals(2, received.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void test_repopulate_in_place() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().failOnRecursiveBeanCreation(false);
+
+		TstBeanIgnoreProperty bean = tester.populate(TstBeanIgnoreProperty.class);
+		TstBeanIgnoreProperty nested = bean.getFieldC();
+		String fieldA = bean.getFieldA();
+		String nestedFieldA = nested.getFieldA();
+		assertTrue(bean == tester.repopulate(bean));
+		assertTrue(nested == bean.getFieldC());
+		assertFalse(fieldA.equals(bean.getFieldA()));
+		assertFalse(nestedFieldA.equals(nested.getFieldA()));
+
+		TstBeanCollections collections = tester.populate(TstBeanCollections.class);
+		List<String> list = collections.getList();
+		List<String> listValues = new ArrayList<String>(list);
+		Map<String, Integer> map = collections.getMap();
+		tester.repopulate(collections);
+		assertTrue(list == collections.getList());
+		assertTrue(map == collections.getMap());
+		assertFalse(listValues.equals(list));
+
+		TstBeanPrimitiveArray arrays = tester.populate(TstBeanPrimitiveArray.class);
+		int[] ints = arrays.getIntArray();
+		int[] intValues = ints.clone();
+		tester.repopulate(arrays);
+		assertTrue(ints == arrays.getIntArray());
+		assertFalse(Arrays.equals(intValues, ints));
+	}
+
+	@Test
+	public void test_repopulate_keeps_element_beans() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().collectionSize(SizeDistribution.uniform(2, 6));
+		TstBeanBeanCollections bean = tester.populate(TstBeanBeanCollections.class);
+		for (int i = 0; i < 20; i++) {
+			List<TstBeanKeyed> list = new ArrayList<TstBeanKeyed>(bean.getList());
+			List<TstBeanKeyed> mapValues = new ArrayList<TstBeanKeyed>(bean.getMap().values());
+			TstBeanKeyed[] array = bean.getArray().clone();
+			String arrayName = array[0].getName();
+
+			tester.repopulate(bean);
+
+			int kept = Math.min(list.size(), bean.getList().size());
+			for (int j = 0; j < kept; j++) {
+				assertTrue(list.get(j) == bean.getList().get(j));
+			}
+			int keptValues = 0;
+			for (TstBeanKeyed value : bean.getMap().values()) {
+				for (TstBeanKeyed old : mapValues) {
+					if (old == value) {
+						keptValues++;
+					}
+				}
+			}
+			assertEquals(Math.min(mapValues.size(), bean.getMap().size()), keptValues);
+			for (int j = 0; j < array.length; j++) {
+				assertTrue(array[j] == bean.getArray()[j]);
+			}
+			assertFalse(arrayName.equals(array[0].getName()));
+		}
+	}
+
+	@Test
+	public void test_repopulate_bounded_queue_grows() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().seed(3).collectionSize(SizeDistribution.uniform(1, 10));
+		TstBeanBoundedQueue bean = tester.populate(TstBeanBoundedQueue.class);
+		int grew = 0;
+		for (int i = 0; i < 50; i++) {
+			int before = bean.getQueue().size();
+			tester.repopulate(bean);
+			int after = bean.getQueue().size();
+			assertTrue(after >= 1 && after <= 10);
+			if (after > before) {
+				grew++;
+			}
+		}
+		assertTrue(grew > 0);
+	}
+
+	@Test
+	public void test_not_equals_big_decimal_keeps_scale() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().seed(1);
+		BeanDefinition def = new PropertiesExtractor(tester.getOptions()).extractBeanDef(TstBeanPerturb.class);
+		PropertyDefinition amount = def.getProperty("amount");
+		for (int i = 0; i < 100; i++) {
+			BigDecimal orgVal = (BigDecimal) tester.generateRandom(TstBeanPerturb.class, amount);
+			BigDecimal newVal = (BigDecimal) tester.generateRandomNotEqualsTo(orgVal, TstBeanPerturb.class, amount);
+			assertFalse(newVal.equals(orgVal));
+			assertEquals(orgVal.scale(), newVal.scale());
+		}
+	}
+
+	@Test
+	public void test_not_equals_value_differs_in_one_step() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions().failOnRecursiveBeanCreation(false);
+		BeanDefinition def = new PropertiesExtractor(tester.getOptions()).extractBeanDef(TstBeanPerturb.class);
+		for (int i = 0; i < 200; i++) {
+			for (PropertyDefinition p : def.getProperties()) {
+				Object orgVal = tester.generateRandom(TstBeanPerturb.class, p);
+				String before = String.valueOf(orgVal);
+				Object newVal = tester.generateRandomNotEqualsTo(orgVal, TstBeanPerturb.class, p);
+				assertFalse("property " + p.getName(), newVal.equals(orgVal));
+				assertEquals("original modified for property " + p.getName(), before, String.valueOf(orgVal));
+			}
+		}
+	}
+
+	@Test
+	public void test_shared_between_threads() throws Exception {
+		final BeanRandom tester = new BeanRandom();
+		tester.getOptions()
+		.failOnRecursiveBeanCreation(false)
+		.ignoreProperty("fieldB.fieldA");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int n = 0; n < 200; n++) {
+							TstBeanIgnoreBeanPropertyType bean = tester.populate(TstBeanIgnoreBeanPropertyType.class);
+							assertNotNull(bean.getFieldB());
+							assertNull(bean.getFieldB().getFieldA());
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void test_fields_populated_via_setters() {
 		TstBeanSetters bean = new BeanRandom().populate(TstBeanSetters.class);
@@ -68,6 +449,48 @@ public class BeanRandomTest {
 		}
 	}
 
+	@Test
+	public void test_string_length_and_alphabet() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions()
+		.stringLength(SizeDistribution.fixed(5))
+		.stringAlphabet(Alphabet.of("x"));
+
+		TstBeanSetters bean = tester.populate(TstBeanSetters.class);
+		assertEquals("xxxxx", bean.fieldToValues.get("String"));
+	}
+
+	@Test
+	public void test_unicode_alphabet_skips_unusable_chars() {
+		char[] buf = new char[100000];
+		Alphabet.UNICODE.fill(new ExtendedRandom(42), buf, 0, buf.length);
+		int supplementary = 0;
+		for (int i = 0; i < buf.length; i++) {
+			int cp = Character.codePointAt(buf, i);
+			if (Character.isSupplementaryCodePoint(cp)) {
+				supplementary++;
+				i++;
+			}
+			int type = Character.getType(cp);
+			assertFalse("unusable char " + Integer.toHexString(cp), type == Character.UNASSIGNED || type == Character.CONTROL
+			        || type == Character.PRIVATE_USE || type == Character.SURROGATE);
+		}
+		// one in 16 picks is supplementary
+		assertTrue(supplementary > 2000 && supplementary < 10000);
+	}
+
+	@Test
+	public void test_same_seed_generates_same_values() {
+		BeanRandom tester1 = new BeanRandom();
+		tester1.getOptions().seed(42);
+		BeanRandom tester2 = new BeanRandom();
+		tester2.getOptions().seed(42);
+
+		TstBeanSetters bean1 = tester1.populate(TstBeanSetters.class);
+		TstBeanSetters bean2 = tester2.populate(TstBeanSetters.class);
+		assertEquals(bean1.fieldToValues, bean2.fieldToValues);
+	}
+
 	@Test
 	public void test_array_property() {
 		TstBeanArray bean = new BeanRandom().populate(TstBeanArray.class);
@@ -84,6 +507,83 @@ public class BeanRandomTest {
 		assertArrayIsPopulated(bean.getBeanArray());
 	}
 
+	@Test
+	public void test_primitive_array_property() {
+		TstBeanPrimitiveArray bean = new BeanRandom().populate(TstBeanPrimitiveArray.class);
+		assertNotNull(bean);
+		assertTrue(bean.getByteArray().length > 0);
+		assertTrue(bean.getShortArray().length > 0);
+		assertTrue(bean.getCharArray().length > 0);
+		assertTrue(bean.getIntArray().length > 0);
+		assertTrue(bean.getLongArray().length > 0);
+		assertTrue(bean.getFloatArray().length > 0);
+		assertTrue(bean.getDoubleArray().length > 0);
+		assertTrue(bean.getBooleanArray().length > 0);
+	}
+
+	@Test
+	public void test_nested_collection_element_types() {
+		TstBeanNestedCollections bean = new BeanRandom().populate(TstBeanNestedCollections.class);
+		assertTrue(bean.getLists().size() > 0);
+		for (List<String> list : bean.getLists()) {
+			assertTrue(list.size() > 0);
+			assertTrue(list.get(0) instanceof String);
+		}
+		assertTrue(bean.getMapOfLists().size() > 0);
+		for (List<Integer> list : bean.getMapOfLists().values()) {
+			assertTrue(list.size() > 0);
+			assertTrue(list.get(0) instanceof Integer);
+		}
+	}
+
+	@Test
+	public void test_large_collections_filled_in_batches() {
+		RandomOptions options = new RandomOptions();
+		options.collectionSize(SizeDistribution.fixed(2500));
+		TstBeanCollections bean = new BeanRandom(options).populate(TstBeanCollections.class);
+		assertEquals(2500, bean.getList().size());
+		assertEquals(2500, bean.getDeque().size());
+		assertNotNull(bean.getList().get(2499));
+	}
+
+	@Test
+	public void test_collection_and_map_properties() {
+		TstBeanCollections bean = new BeanRandom().populate(TstBeanCollections.class);
+		assertNotNull(bean);
+		assertTrue(bean.getList().size() > 0);
+		assertTrue(bean.getSet().size() > 0);
+		assertTrue(bean.getMap().size() > 0);
+		assertTrue(bean.getTreeMap().size() > 0);
+		assertTrue(bean.getConcurrentMap() instanceof ConcurrentHashMap);
+		assertTrue(bean.getConcurrentMap().size() > 0);
+		assertTrue(bean.getEnumMap().size() > 0);
+		assertTrue(bean.getDeque().size() > 0);
+		assertTrue(bean.getCopyOnWriteList().size() > 0);
+		for (Entry<String, Integer> entry : bean.getMap().entrySet()) {
+			assertNotNull(entry.getKey());
+			assertNotNull(entry.getValue());
+		}
+	}
+
+	@Test
+	public void test_collection_sizes() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions()
+		.collectionSize(SizeDistribution.fixed(3))
+		.collectionSize(long[].class, SizeDistribution.fixed(0))
+		.collectionSize(List.class, SizeDistribution.fixed(10000))
+		.collectionSize("map", SizeDistribution.fixed(5));
+
+		TstBeanCollections bean = tester.populate(TstBeanCollections.class);
+		assertEquals(10000, bean.getList().size());
+		assertEquals(5, bean.getMap().size());
+		assertEquals(3, bean.getDeque().size());
+
+		TstBeanPrimitiveArray arrays = tester.populate(TstBeanPrimitiveArray.class);
+		assertEquals(0, arrays.getLongArray().length);
+		assertEquals(3, arrays.getIntArray().length);
+	}
+
 	@Test
 	public void test_enum_property() {
 		TstBeanEnum bean = new BeanRandom().populate(TstBeanEnum.class);
@@ -91,6 +591,18 @@ public class BeanRandomTest {
 		assertNotNull(bean.getEnumField());
 	}
 
+	@Test
+	public void test_weighted_enum_property() {
+		BeanRandom tester = new BeanRandom();
+		tester.getOptions()
+		.collectionSize(SizeDistribution.fixed(20))
+		.enumDistribution(TstBeanCollections.TstEnum.class, EnumDistribution.weighted(0, 1, 0));
+
+		TstBeanCollections bean = tester.populate(TstBeanCollections.class);
+		assertEquals(1, bean.getEnumMap().size());
+		assertTrue(bean.getEnumMap().containsKey(TstBeanCollections.TstEnum.TWO));
+	}
+
 	@Test
 	public void test_infinite_recursion_passes() {
 		// TODO:set option = no fail
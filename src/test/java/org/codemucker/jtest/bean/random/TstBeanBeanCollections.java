@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.List;
+import java.util.Map;
+
+public class TstBeanBeanCollections {
+
+	private List<TstBeanKeyed> list;
+	private Map<String, TstBeanKeyed> map;
+	private TstBeanKeyed[] array;
+
+	public List<TstBeanKeyed> getList() {
+		return list;
+	}
+
+	public void setList(List<TstBeanKeyed> list) {
+		this.list = list;
+	}
+
+	public Map<String, TstBeanKeyed> getMap() {
+		return map;
+	}
+
+	public void setMap(Map<String, TstBeanKeyed> map) {
+		this.map = map;
+	}
+
+	public TstBeanKeyed[] getArray() {
+		return array;
+	}
+
+	public void setArray(TstBeanKeyed[] array) {
+		this.array = array;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class TstBeanCollections {
+	public static enum TstEnum {
+		ONE, TWO, THREE;
+	}
+
+	private List<String> list;
+	private Set<Integer> set;
+	private Map<String, Integer> map;
+	private TreeMap<String, Long> treeMap;
+	private ConcurrentMap<Integer, String> concurrentMap;
+	private EnumMap<TstEnum, String> enumMap;
+	private ArrayDeque<String> deque;
+	private CopyOnWriteArrayList<String> copyOnWriteList;
+
+	public List<String> getList() {
+		return list;
+	}
+
+	public void setList(List<String> list) {
+		this.list = list;
+	}
+
+	public Set<Integer> getSet() {
+		return set;
+	}
+
+	public void setSet(Set<Integer> set) {
+		this.set = set;
+	}
+
+	public Map<String, Integer> getMap() {
+		return map;
+	}
+
+	public void setMap(Map<String, Integer> map) {
+		this.map = map;
+	}
+
+	public TreeMap<String, Long> getTreeMap() {
+		return treeMap;
+	}
+
+	public void setTreeMap(TreeMap<String, Long> treeMap) {
+		this.treeMap = treeMap;
+	}
+
+	public ConcurrentMap<Integer, String> getConcurrentMap() {
+		return concurrentMap;
+	}
+
+	public void setConcurrentMap(ConcurrentMap<Integer, String> concurrentMap) {
+		this.concurrentMap = concurrentMap;
+	}
+
+	public EnumMap<TstEnum, String> getEnumMap() {
+		return enumMap;
+	}
+
+	public void setEnumMap(EnumMap<TstEnum, String> enumMap) {
+		this.enumMap = enumMap;
+	}
+
+	public ArrayDeque<String> getDeque() {
+		return deque;
+	}
+
+	public void setDeque(ArrayDeque<String> deque) {
+		this.deque = deque;
+	}
+
+	public CopyOnWriteArrayList<String> getCopyOnWriteList() {
+		return copyOnWriteList;
+	}
+
+	public void setCopyOnWriteList(CopyOnWriteArrayList<String> copyOnWriteList) {
+		this.copyOnWriteList = copyOnWriteList;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+public class TstBeanKeyed {
+
+	// "aa" and "bB" have the same String.hashCode
+	private long aa;
+	private long bB;
+	private String name;
+
+	public long getAa() {
+		return aa;
+	}
+
+	public void setAa(long aa) {
+		this.aa = aa;
+	}
+
+	public long getBB() {
+		return bB;
+	}
+
+	public void setBB(long bB) {
+		this.bB = bB;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.util.List;
+import java.util.Map;
+
+public class TstBeanNestedCollections {
+
+	private List<List<String>> lists;
+	private Map<String, List<Integer>> mapOfLists;
+
+	public List<List<String>> getLists() {
+		return lists;
+	}
+
+	public void setLists(List<List<String>> lists) {
+		this.lists = lists;
+	}
+
+	public Map<String, List<Integer>> getMapOfLists() {
+		return mapOfLists;
+	}
+
+	public void setMapOfLists(Map<String, List<Integer>> mapOfLists) {
+		this.mapOfLists = mapOfLists;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.codemucker.jtest.bean.random.TstBeanCollections.TstEnum;
+
+public class TstBeanPerturb {
+
+	private boolean flag;
+	private double ratio;
+	private BigDecimal amount;
+	private String name;
+	private TstEnum tstEnum;
+	private List<String> names;
+	private TstBeanPerturb child;
+
+	public boolean isFlag() {
+		return flag;
+	}
+
+	public void setFlag(boolean flag) {
+		this.flag = flag;
+	}
+
+	public double getRatio() {
+		return ratio;
+	}
+
+	public void setRatio(double ratio) {
+		this.ratio = ratio;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public void setAmount(BigDecimal amount) {
+		this.amount = amount;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public TstEnum getTstEnum() {
+		return tstEnum;
+	}
+
+	public void setTstEnum(TstEnum tstEnum) {
+		this.tstEnum = tstEnum;
+	}
+
+	public List<String> getNames() {
+		return names;
+	}
+
+	public void setNames(List<String> names) {
+		this.names = names;
+	}
+
+	public TstBeanPerturb getChild() {
+		return child;
+	}
+
+	public void setChild(TstBeanPerturb child) {
+		this.child = child;
+	}
+
+	@Override
+	public int hashCode() {
+		return (name == null ? 0 : name.hashCode()) + (flag ? 1 : 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TstBeanPerturb)) {
+			return false;
+		}
+		TstBeanPerturb other = (TstBeanPerturb) obj;
+		return flag == other.flag && Double.compare(ratio, other.ratio) == 0 && eq(amount, other.amount) && eq(name, other.name) && tstEnum == other.tstEnum
+		        && eq(names, other.names) && eq(child, other.child);
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
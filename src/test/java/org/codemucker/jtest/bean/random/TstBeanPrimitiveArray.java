@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random;
+
+
+public class TstBeanPrimitiveArray {
+	private byte[] byteArray;
+	private short[] shortArray;
+	private char[] charArray;
+	private int[] intArray;
+	private long[] longArray;
+	private float[] floatArray;
+	private double[] doubleArray;
+	private boolean[] booleanArray;
+
+	public byte[] getByteArray() {
+		return byteArray;
+	}
+
+	public void setByteArray(byte[] byteArray) {
+		this.byteArray = byteArray;
+	}
+
+	public short[] getShortArray() {
+		return shortArray;
+	}
+
+	public void setShortArray(short[] shortArray) {
+		this.shortArray = shortArray;
+	}
+
+	public char[] getCharArray() {
+		return charArray;
+	}
+
+	public void setCharArray(char[] charArray) {
+		this.charArray = charArray;
+	}
+
+	public int[] getIntArray() {
+		return intArray;
+	}
+
+	public void setIntArray(int[] intArray) {
+		this.intArray = intArray;
+	}
+
+	public long[] getLongArray() {
+		return longArray;
+	}
+
+	public void setLongArray(long[] longArray) {
+		this.longArray = longArray;
+	}
+
+	public float[] getFloatArray() {
+		return floatArray;
+	}
+
+	public void setFloatArray(float[] floatArray) {
+		this.floatArray = floatArray;
+	}
+
+	public double[] getDoubleArray() {
+		return doubleArray;
+	}
+
+	public void setDoubleArray(double[] doubleArray) {
+		this.doubleArray = doubleArray;
+	}
+
+	public boolean[] getBooleanArray() {
+		return booleanArray;
+	}
+
+	public void setBooleanArray(boolean[] booleanArray) {
+		this.booleanArray = booleanArray;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Bert van Brakel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codemucker.jtest.bean.random.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codemucker.jtest.TestHelper;
+import org.junit.Test;
+
+public class ShardedBeanGeneratorTest {
+
+	private final TestHelper helper = new TestHelper();
+
+	@Test
+	public void test_shard_ranges_cover_count() {
+		assertEquals(0, ShardedBeanGenerator.shardStart(10, 0, 3));
+		assertEquals(4, ShardedBeanGenerator.shardStart(10, 1, 3));
+		assertEquals(7, ShardedBeanGenerator.shardStart(10, 2, 3));
+		assertEquals(10, ShardedBeanGenerator.shardStart(10, 3, 3));
+	}
+
+	@Test
+	public void test_output_same_whatever_the_sharding() throws IOException {
+		List<File> single = new ShardedBeanGenerator()
+			.beanClass(TstBeanText.class)
+			.seed(42)
+			.count(101)
+			.threads(1)
+			.outputDir(helper.createTempDir())
+			.generate();
+
+		List<File> sharded = new ArrayList<File>();
+		File dir = helper.createTempDir();
+		for (int shard = 0; shard < 3; shard++) {
+			sharded.addAll(new ShardedBeanGenerator()
+				.beanClass(TstBeanText.class)
+				.seed(42)
+				.count(101)
+				.shard(shard, 3)
+				.threads(4)
+				.outputDir(dir)
+				.generate());
+		}
+		List<String> expect = readLines(single);
+		assertEquals(101, expect.size());
+		assertEquals(expect, readLines(sharded));
+	}
+
+	@Test
+	public void test_cli() throws IOException {
+		File dir = helper.createTempDir();
+		int exitCode = GenerateBeans.run(new String[] { "--class", TstBeanText.class.getName(), "--count", "10", "--shard", "1", "--shards", "2", "--out",
+		        dir.getAbsolutePath() }, System.out, System.err);
+		assertEquals(0, exitCode);
+		assertEquals(2, GenerateBeans.run(new String[] { "--count", "10" }, System.out, System.err));
+	}
+
+	@Test
+	public void test_cli_rejects_bad_shards_and_threads() {
+		String bean = TstBeanText.class.getName();
+		assertEquals(2, GenerateBeans.run(new String[] { "--class", bean, "--count", "10", "--shard", "2", "--shards", "2" }, System.out, System.err));
+		assertEquals(2, GenerateBeans.run(new String[] { "--class", bean, "--count", "10", "--shard", "-1" }, System.out, System.err));
+		assertEquals(2, GenerateBeans.run(new String[] { "--class", bean, "--count", "10", "--shards", "0" }, System.out, System.err));
+		assertEquals(2, GenerateBeans.run(new String[] { "--class", bean, "--count", "10", "--threads", "0" }, System.out, System.err));
+		// would wrap to 0 if narrowed from a long
+		assertEquals(2, GenerateBeans.run(new String[] { "--class", bean, "--count", "10", "--shards", "4294967296" }, System.out, System.err));
+	}
+
+	private static List<String> readLines(List<File> files) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (File file : files) {
+			lines.addAll(Files.readAllLines(file.toPath(), Charset.forName("UTF-8")));
+		}
+		return lines;
+	}
+}
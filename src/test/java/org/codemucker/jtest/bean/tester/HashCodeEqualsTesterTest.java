@@ -15,8 +15,13 @@
  */
 package org.codemucker.jtest.bean.tester;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import org.codemucker.jtest.bean.CtorExtractor;
+import org.codemucker.jtest.bean.PropertiesExtractor;
 import org.codemucker.jtest.bean.tester.hashcodeequals.TstBeanBrokenCtor;
 import org.codemucker.jtest.bean.tester.hashcodeequals.TstBeanHashCodeChangesPerInvocation;
 import org.codemucker.jtest.bean.tester.hashcodeequals.TstBeanNonEqualHashcode;
@@ -77,6 +82,29 @@ public class HashCodeEqualsTesterTest {
 		assertFailed("Expected failure on hashcode which doe not equal on equal beans", tester, TstBeanNonEqualHashcode.class);
 	}
 	
+	@Test
+	public void test_plan_is_cached_per_class_and_options() {
+		HashCodeEqualsOptions options = new HashCodeEqualsOptions();
+		HashCodeEqualsPlan plan = planFor(TstBeanOk.class, options);
+
+		assertSame(plan, planFor(TstBeanOk.class, new HashCodeEqualsOptions()));
+		assertEquals(TstBeanOk.class, plan.getBeanClass());
+		assertEquals(TstBeanOk.class.getDeclaredConstructors().length, plan.getCtors().length);
+
+		options.ignoreProperty(TstBeanOk.class, "fieldTwo");
+		assertNotSame(plan, planFor(TstBeanOk.class, options));
+
+		// repeated checks reuse the plan
+		HashCodeEqualsTester tester = new HashCodeEqualsTester();
+		for (int i = 0; i < 5; i++) {
+			tester.checkHashCodeEquals(TstBeanOk.class);
+		}
+		assertSame(plan, planFor(TstBeanOk.class, tester.getOptions()));
+	}
+
+	private static HashCodeEqualsPlan planFor(Class<?> beanClass, HashCodeEqualsOptions options) {
+		return HashCodeEqualsPlan.get(beanClass, new PropertiesExtractor(options), new CtorExtractor(options));
+	}
 	
 	private void assertFailed(String msg, HashCodeEqualsTester tester, Class<?> klass) {
 		boolean failed = false;